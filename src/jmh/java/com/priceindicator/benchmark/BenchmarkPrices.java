@@ -0,0 +1,46 @@
+package com.priceindicator.benchmark;
+
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PricePayload;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+final class BenchmarkPrices {
+
+    static final int BATCH_SIZE = 1000;
+
+    private BenchmarkPrices() {
+    }
+
+    static List<InstrumentId> instrumentIds(int count) {
+        return IntStream.range(0, count)
+            .mapToObj(number -> InstrumentId.of(UUID.randomUUID().toString()))
+            .collect(Collectors.toList());
+    }
+
+    //prices for count instruments starting from the given position, wrapping around the universe
+    static List<Price> prices(List<InstrumentId> instrumentIds, int from, int count, LocalDateTime asOf) {
+        List<Price> prices = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            prices.add(Price.builder()
+                .id(instrumentIds.get((from + i) % instrumentIds.size()))
+                .asOf(asOf)
+                .payload(PricePayload.of("payload " + i))
+                .build());
+        }
+        return prices;
+    }
+
+    static List<List<Price>> batches(List<Price> prices) {
+        List<List<Price>> batches = new ArrayList<>();
+        for (int from = 0; from < prices.size(); from += BATCH_SIZE) {
+            batches.add(prices.subList(from, Math.min(prices.size(), from + BATCH_SIZE)));
+        }
+        return batches;
+    }
+}
@@ -0,0 +1,128 @@
+package com.priceindicator.benchmark;
+
+import com.priceindicator.domain.BatchRunId;
+import com.priceindicator.domain.BatchRunStatus;
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.PriceBatch;
+import com.priceindicator.domain.PricePayload;
+import com.priceindicator.repository.BatchRepository;
+import com.priceindicator.repository.HistoryRetention;
+import com.priceindicator.repository.InstrumentIdRegistry;
+import com.priceindicator.repository.LastPriceRepository;
+import com.priceindicator.repository.PriceRepository;
+import com.priceindicator.repository.PriceRepository.HistoryStore;
+import com.priceindicator.service.IngestionPipeline;
+import com.priceindicator.service.NearPriceCache;
+import com.priceindicator.service.PriceConsumeService;
+import com.priceindicator.service.PriceMetrics;
+import com.priceindicator.service.PricePublishService;
+import com.priceindicator.service.PriceSubscriptions;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//getLastPriceById throughput alone, with reads skewed to hot instruments and while another thread keeps finishing runs
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ConsumeBenchmark {
+
+    private static final int HOT_INSTRUMENTS = 2000;
+
+    @Param({"100000"})
+    private int totalInstruments;
+
+    @Param({"HEAP", "OFF_HEAP"})
+    private LastPriceRepository.Store store;
+
+    @Param({"0", "4096"})
+    private int nearCacheSize;
+
+    private IngestionPipeline ingestionPipeline;
+    private PricePublishService publishService;
+    private PriceConsumeService consumeService;
+    private List<InstrumentId> instrumentIds;
+    private int runNumber;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InstrumentIdRegistry registry = new InstrumentIdRegistry();
+        LastPriceRepository lastPriceRepository = new LastPriceRepository(registry, store);
+        PriceRepository priceRepository = new PriceRepository(lastPriceRepository, registry,
+            HistoryRetention.keepLast(8), HistoryStore.SKIP_LIST);
+        ingestionPipeline = new IngestionPipeline(1024);
+        publishService = new PricePublishService(new BatchRepository(), priceRepository, ingestionPipeline, new PriceMetrics());
+        consumeService = new PriceConsumeService(priceRepository, new PriceMetrics(),
+            new PriceSubscriptions(lastPriceRepository), new NearPriceCache(priceRepository, nearCacheSize));
+        instrumentIds = BenchmarkPrices.instrumentIds(totalInstruments);
+        BenchmarkPrices.batches(BenchmarkPrices.prices(instrumentIds, 0, totalInstruments, LocalDateTime.now()))
+            .forEach(priceRepository::addPrices);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        ingestionPipeline.close();
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(4)
+    public Optional<PricePayload> getLastPriceById() {
+        return lookup();
+    }
+
+    //most reads go to a small set of hot instruments, the way consumers read liquid instruments
+    @Benchmark
+    @Group("readHot")
+    @GroupThreads(4)
+    public Optional<PricePayload> getHotLastPriceById() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int hotInstruments = Math.min(HOT_INSTRUMENTS, instrumentIds.size());
+        return consumeService.getLastPriceById(instrumentIds.get(
+            random.nextInt(10) == 0 ? random.nextInt(instrumentIds.size()) : random.nextInt(hotInstruments)));
+    }
+
+    @Benchmark
+    @Group("readWhileFinishing")
+    @GroupThreads(3)
+    public Optional<PricePayload> getLastPriceByIdWhileFinishing() {
+        return lookup();
+    }
+
+    @Benchmark
+    @Group("readWhileFinishing")
+    @GroupThreads(1)
+    public BatchRunStatus finishRun() {
+        BatchRunId batchRunId = publishService.announceBatchRun().getBatchRunId();
+        publishService.publishBatch(PriceBatch.builder()
+            .batchRunId(batchRunId)
+            .prices(BenchmarkPrices.prices(instrumentIds, runNumber++ * BenchmarkPrices.BATCH_SIZE,
+                BenchmarkPrices.BATCH_SIZE, LocalDateTime.now()))
+            .build());
+        return publishService.finishBatchRun(batchRunId);
+    }
+
+    private Optional<PricePayload> lookup() {
+        return consumeService.getLastPriceById(instrumentIds.get(ThreadLocalRandom.current().nextInt(instrumentIds.size())));
+    }
+}
@@ -0,0 +1,85 @@
+package com.priceindicator.benchmark;
+
+import com.priceindicator.domain.BatchRunId;
+import com.priceindicator.domain.BatchRunStatus;
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PriceBatch;
+import com.priceindicator.repository.BatchRepository;
+import com.priceindicator.repository.HistoryRetention;
+import com.priceindicator.repository.InstrumentIdRegistry;
+import com.priceindicator.repository.LastPriceRepository;
+import com.priceindicator.repository.PriceRepository;
+import com.priceindicator.repository.PriceRepository.HistoryStore;
+import com.priceindicator.service.IngestionPipeline;
+import com.priceindicator.service.PriceMetrics;
+import com.priceindicator.service.PricePublishService;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//finishBatchRun latency by run size and by the number of instruments already known to the repositories
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 30)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FinishBenchmark {
+
+    @Param({"1000", "100000"})
+    private int runSize;
+
+    @Param({"10000", "1000000"})
+    private int totalInstruments;
+
+    private IngestionPipeline ingestionPipeline;
+    private PricePublishService service;
+    private List<InstrumentId> instrumentIds;
+    private BatchRunId batchRunId;
+    private int runNumber;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InstrumentIdRegistry registry = new InstrumentIdRegistry();
+        //history is bounded, so repeated finishes do not grow the heap during the measurement
+        PriceRepository priceRepository = new PriceRepository(new LastPriceRepository(registry), registry,
+            HistoryRetention.keepLast(8), HistoryStore.SKIP_LIST);
+        ingestionPipeline = new IngestionPipeline(1024);
+        service = new PricePublishService(new BatchRepository(), priceRepository, ingestionPipeline, new PriceMetrics());
+        instrumentIds = BenchmarkPrices.instrumentIds(totalInstruments);
+        BenchmarkPrices.batches(BenchmarkPrices.prices(instrumentIds, 0, totalInstruments, LocalDateTime.now()))
+            .forEach(priceRepository::addPrices);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpRun() {
+        batchRunId = service.announceBatchRun().getBatchRunId();
+        List<Price> prices = BenchmarkPrices.prices(instrumentIds, runNumber++ * runSize, runSize, LocalDateTime.now());
+        BenchmarkPrices.batches(prices).forEach(batch ->
+            service.publishBatch(PriceBatch.builder().batchRunId(batchRunId).prices(batch).build()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        ingestionPipeline.close();
+    }
+
+    @Benchmark
+    public BatchRunStatus finishBatchRun() {
+        return service.finishBatchRun(batchRunId);
+    }
+}
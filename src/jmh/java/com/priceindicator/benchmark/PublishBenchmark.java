@@ -0,0 +1,98 @@
+package com.priceindicator.benchmark;
+
+import com.priceindicator.domain.BatchRunId;
+import com.priceindicator.domain.BatchRunStatus;
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PriceBatch;
+import com.priceindicator.repository.BatchRepository;
+import com.priceindicator.repository.BatchRepository.StagingMode;
+import com.priceindicator.repository.LastPriceRepository;
+import com.priceindicator.repository.PriceRepository;
+import com.priceindicator.service.IngestionPipeline;
+import com.priceindicator.service.PriceMetrics;
+import com.priceindicator.service.PricePublishService;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+//publishBatch throughput of full batches at growing publisher thread counts
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PublishBenchmark {
+
+    @Param({"FULL", "LATEST"})
+    private StagingMode stagingMode;
+
+    private BatchRepository batchRepository;
+    private IngestionPipeline ingestionPipeline;
+    private PricePublishService service;
+    private List<Price> prices;
+    private BatchRunId batchRunId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        batchRepository = new BatchRepository(stagingMode, BatchRepository.DEFAULT_TTL);
+        ingestionPipeline = new IngestionPipeline(1024);
+        service = new PricePublishService(batchRepository, new PriceRepository(new LastPriceRepository()), ingestionPipeline, new PriceMetrics());
+        List<InstrumentId> instrumentIds = BenchmarkPrices.instrumentIds(10_000);
+        prices = BenchmarkPrices.prices(instrumentIds, 0, BenchmarkPrices.BATCH_SIZE, LocalDateTime.now());
+    }
+
+    //every iteration publishes into its own run, which is replaced only while no thread is publishing,
+    //so every measured batch is staged and the staged prices are dropped between iterations
+    @Setup(Level.Iteration)
+    public void announceRun() {
+        batchRunId = service.announceBatchRun().getBatchRunId();
+    }
+
+    @TearDown(Level.Iteration)
+    public void cancelRun() {
+        service.cancelBatchRun(batchRunId);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        ingestionPipeline.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public BatchRunStatus publishBatch_1Thread() {
+        return publish();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public BatchRunStatus publishBatch_4Threads() {
+        return publish();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public BatchRunStatus publishBatch_16Threads() {
+        return publish();
+    }
+
+    private BatchRunStatus publish() {
+        return service.publishBatch(PriceBatch.builder().batchRunId(batchRunId).prices(prices).build());
+    }
+}
@@ -0,0 +1,100 @@
+package com.priceindicator.benchmark;
+
+import com.priceindicator.domain.Price;
+import com.priceindicator.repository.ChunkedPriceBuffer;
+import com.priceindicator.repository.PriceBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//cost of staging 100 batches into a run which already holds stagedBatches batches,
+//copy on write is the staging BatchRepository used before the chunked buffer
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, batchSize = 100)
+@Measurement(iterations = 20, batchSize = 100)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StagingBenchmark {
+
+    public enum Staging {
+        COPY_ON_WRITE(CopyOnWritePriceBuffer::new),
+        CHUNKED(ChunkedPriceBuffer::new);
+
+        private final Supplier<PriceBuffer> bufferFactory;
+
+        Staging(Supplier<PriceBuffer> bufferFactory) {
+            this.bufferFactory = bufferFactory;
+        }
+    }
+
+    @Param({"COPY_ON_WRITE", "CHUNKED"})
+    private Staging staging;
+
+    @Param({"10", "100", "1000"})
+    private int stagedBatches;
+
+    private List<Price> batch;
+    private PriceBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setUpBatch() {
+        batch = BenchmarkPrices.prices(BenchmarkPrices.instrumentIds(BenchmarkPrices.BATCH_SIZE), 0,
+            BenchmarkPrices.BATCH_SIZE, LocalDateTime.now());
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpBuffer() {
+        buffer = staging.bufferFactory.get();
+        for (int i = 0; i < stagedBatches; i++) {
+            buffer.add(batch);
+        }
+    }
+
+    @Benchmark
+    public PriceBuffer add() {
+        buffer.add(batch);
+        return buffer;
+    }
+
+    private static class CopyOnWritePriceBuffer implements PriceBuffer {
+
+        private final CopyOnWriteArrayList<Price> prices = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void add(List<Price> newPrices) {
+            prices.addAll(newPrices);
+        }
+
+        @Override
+        public int size() {
+            return prices.size();
+        }
+
+        @Override
+        public List<Price> drain() {
+            return new ArrayList<>(prices);
+        }
+
+        @Override
+        public Iterator<List<Price>> drainChunks() {
+            return List.of(drain()).iterator();
+        }
+    }
+}
@@ -2,8 +2,10 @@ package com.priceindicator;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class PriceIndicatorApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(PriceIndicatorApplication.class, args);
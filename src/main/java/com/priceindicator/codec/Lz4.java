@@ -0,0 +1,149 @@
+package com.priceindicator.codec;
+
+import java.util.Arrays;
+
+//LZ4 block format: sequences of a token (literal length and match length nibbles), extra literal length bytes,
+//literals, a little endian match distance and extra match length bytes, the last sequence has literals only
+//the compressor is the fast greedy one with a single hash table of 4 byte sequences, so it trades ratio for speed
+public final class Lz4 {
+
+    private static final int MIN_MATCH = 4;
+    //the last 5 bytes are always literals and the last match starts at least 12 bytes before the end
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int MAX_DISTANCE = 65_535;
+    private static final int HASH_LOG = 12;
+    private static final int RUN_MASK = 15;
+
+    private Lz4() {
+    }
+
+    public static byte[] compress(byte[] source, int offset, int length) {
+        byte[] target = new byte[length + length / 255 + 16];
+        int targetPosition = 0;
+        int end = offset + length;
+        int anchor = offset;
+        if (length > MATCH_FIND_LIMIT) {
+            //positions are kept plus one, so 0 means an empty slot
+            int[] table = new int[1 << HASH_LOG];
+            int matchLimit = end - LAST_LITERALS;
+            int position = offset;
+            while (position < end - MATCH_FIND_LIMIT) {
+                int sequence = readInt(source, position);
+                int slot = (sequence * -1640531535) >>> (Integer.SIZE - HASH_LOG);
+                int candidate = table[slot] - 1;
+                table[slot] = position + 1;
+                if (candidate < 0 || position - candidate > MAX_DISTANCE || readInt(source, candidate) != sequence) {
+                    position++;
+                    continue;
+                }
+                while (position > anchor && candidate > offset && source[position - 1] == source[candidate - 1]) {
+                    position--;
+                    candidate--;
+                }
+                int matchLength = MIN_MATCH;
+                while (position + matchLength < matchLimit && source[position + matchLength] == source[candidate + matchLength]) {
+                    matchLength++;
+                }
+                targetPosition = writeSequence(target, targetPosition, source, anchor, position - anchor,
+                    position - candidate, matchLength);
+                position += matchLength;
+                anchor = position;
+            }
+        }
+        targetPosition = writeLiterals(target, targetPosition, source, anchor, end - anchor, 0);
+        return Arrays.copyOf(target, targetPosition);
+    }
+
+    public static byte[] decompress(byte[] source, int originalLength) {
+        byte[] target = new byte[originalLength];
+        try {
+            int sourcePosition = 0;
+            int targetPosition = 0;
+            while (true) {
+                int token = source[sourcePosition++] & 0xFF;
+                int literalLength = token >>> 4;
+                if (literalLength == RUN_MASK) {
+                    int extra;
+                    do {
+                        extra = source[sourcePosition++] & 0xFF;
+                        literalLength += extra;
+                    } while (extra == 255);
+                }
+                System.arraycopy(source, sourcePosition, target, targetPosition, literalLength);
+                sourcePosition += literalLength;
+                targetPosition += literalLength;
+                if (sourcePosition == source.length) {
+                    break;
+                }
+                int distance = (source[sourcePosition] & 0xFF) | (source[sourcePosition + 1] & 0xFF) << 8;
+                sourcePosition += 2;
+                int matchLength = token & RUN_MASK;
+                if (matchLength == RUN_MASK) {
+                    int extra;
+                    do {
+                        extra = source[sourcePosition++] & 0xFF;
+                        matchLength += extra;
+                    } while (extra == 255);
+                }
+                matchLength += MIN_MATCH;
+                int from = targetPosition - distance;
+                if (distance == 0 || from < 0 || targetPosition + matchLength > originalLength) {
+                    throw new IllegalArgumentException("Malformed LZ4 block");
+                }
+                //a match may overlap the bytes it produces, so short distances are copied byte by byte
+                if (distance >= matchLength) {
+                    System.arraycopy(target, from, target, targetPosition, matchLength);
+                } else {
+                    for (int i = 0; i < matchLength; i++) {
+                        target[targetPosition + i] = target[from + i];
+                    }
+                }
+                targetPosition += matchLength;
+            }
+            if (targetPosition != originalLength) {
+                throw new IllegalArgumentException("Malformed LZ4 block");
+            }
+            return target;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed LZ4 block", e);
+        }
+    }
+
+    private static int writeSequence(byte[] target, int targetPosition, byte[] source, int literalOffset,
+        int literalLength, int distance, int matchLength) {
+        int position = writeLiterals(target, targetPosition, source, literalOffset, literalLength, matchLength - MIN_MATCH);
+        target[position++] = (byte) distance;
+        target[position++] = (byte) (distance >>> 8);
+        return writeLength(target, position, matchLength - MIN_MATCH);
+    }
+
+    private static int writeLiterals(byte[] target, int targetPosition, byte[] source, int literalOffset,
+        int literalLength, int matchLengthCode) {
+        int position = targetPosition;
+        target[position++] = (byte) (Math.min(literalLength, RUN_MASK) << 4 | Math.min(matchLengthCode, RUN_MASK));
+        position = writeLength(target, position, literalLength);
+        System.arraycopy(source, literalOffset, target, position, literalLength);
+        return position + literalLength;
+    }
+
+    //lengths which do not fit the token nibble continue in bytes of 255 and a last byte below 255
+    private static int writeLength(byte[] target, int targetPosition, int length) {
+        if (length < RUN_MASK) {
+            return targetPosition;
+        }
+        int position = targetPosition;
+        int remaining = length - RUN_MASK;
+        while (remaining >= 255) {
+            target[position++] = (byte) 255;
+            remaining -= 255;
+        }
+        target[position++] = (byte) remaining;
+        return position;
+    }
+
+    private static int readInt(byte[] source, int position) {
+        return (source[position] & 0xFF) | (source[position + 1] & 0xFF) << 8
+            | (source[position + 2] & 0xFF) << 16 | (source[position + 3] & 0xFF) << 24;
+    }
+}
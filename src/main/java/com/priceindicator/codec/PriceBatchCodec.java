@@ -0,0 +1,173 @@
+package com.priceindicator.codec;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.priceindicator.domain.BatchRunId;
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PriceBatch;
+import com.priceindicator.domain.PricePayload;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+//batch layout: batch run id (16 bytes), instrument id dictionary (count, then length prefixed UTF-8 ids),
+//prices (count, then per price dictionary index, asOf epoch seconds UTC and nano of second as deltas to the previous
+//price, payload length and payload UTF-8 bytes)
+//counts, indexes, lengths and deltas are varints, deltas are zigzag encoded, so prices out of time order stay small
+//seconds and nanos are kept apart, so every LocalDateTime fits, not only the years a long of epoch nanos can hold
+public final class PriceBatchCodec {
+
+    private PriceBatchCodec() {
+    }
+
+    public static ByteBuffer encode(PriceBatch batch) {
+        List<Price> prices = batch.getPrices();
+        Map<InstrumentId, Integer> dictionary = new HashMap<>();
+        List<byte[]> instrumentIds = new ArrayList<>();
+        int[] indexes = new int[prices.size()];
+        long[] asOfSeconds = new long[prices.size() + 1];
+        int[] asOfNanos = new int[prices.size() + 1];
+        byte[][] payloads = new byte[prices.size()][];
+
+        int size = 2 * Long.BYTES;
+        for (int i = 0; i < prices.size(); i++) {
+            Price price = prices.get(i);
+            indexes[i] = dictionary.computeIfAbsent(price.getId(), instrumentId -> {
+                instrumentIds.add(instrumentId.getInstrumentId().getBytes(UTF_8));
+                return instrumentIds.size() - 1;
+            });
+            //the deltas of price i are taken against slot i, which holds the previous price or zero for the first one
+            asOfSeconds[i + 1] = price.getAsOf().toEpochSecond(ZoneOffset.UTC);
+            asOfNanos[i + 1] = price.getAsOf().getNano();
+            payloads[i] = price.getPayload().getPayload().getBytes(UTF_8);
+            size += varIntSize(indexes[i]) + varIntSize(zigZag(asOfSeconds[i + 1] - asOfSeconds[i]))
+                + varIntSize(zigZag(asOfNanos[i + 1] - asOfNanos[i])) + varIntSize(payloads[i].length) + payloads[i].length;
+        }
+        size += varIntSize(instrumentIds.size()) + varIntSize(prices.size());
+        for (byte[] instrumentId : instrumentIds) {
+            size += varIntSize(instrumentId.length) + instrumentId.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        UUID batchRunId = batch.getBatchRunId().getBatchRunId();
+        buffer.putLong(batchRunId.getMostSignificantBits()).putLong(batchRunId.getLeastSignificantBits());
+        putVarInt(buffer, instrumentIds.size());
+        for (byte[] instrumentId : instrumentIds) {
+            putVarInt(buffer, instrumentId.length);
+            buffer.put(instrumentId);
+        }
+        putVarInt(buffer, prices.size());
+        for (int i = 0; i < prices.size(); i++) {
+            putVarInt(buffer, indexes[i]);
+            putVarInt(buffer, zigZag(asOfSeconds[i + 1] - asOfSeconds[i]));
+            putVarInt(buffer, zigZag(asOfNanos[i + 1] - asOfNanos[i]));
+            putVarInt(buffer, payloads[i].length);
+            buffer.put(payloads[i]);
+        }
+        return buffer.flip();
+    }
+
+    //reads straight from the buffer without copying it, every instrument id is decoded once and shared by its prices
+    //the buffer position is moved past the batch, so batches can be read one after another
+    public static PriceBatch decode(ByteBuffer buffer) {
+        try {
+            BatchRunId batchRunId = BatchRunId.of(new UUID(buffer.getLong(), buffer.getLong()));
+            InstrumentId[] dictionary = new InstrumentId[getCount(buffer)];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = InstrumentId.of(getString(buffer));
+            }
+            int count = getCount(buffer);
+            List<Price> prices = new ArrayList<>(count);
+            long asOfSeconds = 0;
+            long asOfNanos = 0;
+            for (int i = 0; i < count; i++) {
+                InstrumentId instrumentId = dictionary[getCount(buffer)];
+                asOfSeconds += unZigZag(getVarInt(buffer));
+                asOfNanos += unZigZag(getVarInt(buffer));
+                prices.add(Price.builder()
+                    .id(instrumentId)
+                    .asOf(toLocalDateTime(asOfSeconds, asOfNanos))
+                    .payload(PricePayload.of(getString(buffer)))
+                    .build());
+            }
+            return PriceBatch.builder().batchRunId(batchRunId).prices(prices).build();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed price batch", e);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = getCount(buffer);
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.duplicate().get(bytes);
+            value = new String(bytes, UTF_8);
+        }
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static int getCount(ByteBuffer buffer) {
+        long value = getVarInt(buffer);
+        if (value > Integer.MAX_VALUE || value > buffer.capacity()) {
+            throw new IllegalArgumentException("Malformed price batch");
+        }
+        return (int) value;
+    }
+
+    private static long getVarInt(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte next = buffer.get();
+            value |= (long) (next & 0x7F) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed price batch");
+    }
+
+    private static void putVarInt(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int varIntSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static LocalDateTime toLocalDateTime(long seconds, long nanos) {
+        try {
+            return LocalDateTime.ofEpochSecond(seconds, Math.toIntExact(nanos), ZoneOffset.UTC);
+        } catch (DateTimeException | ArithmeticException e) {
+            throw new IllegalArgumentException("Malformed price batch", e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.priceindicator.concurrent;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+//unbounded array indexed by dense int ids, it grows by pages, so existing elements are never copied
+//reads are lock free, only adding a new page takes a lock
+public class ConcurrentPagedArray<E> {
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private volatile AtomicReferenceArray<AtomicReferenceArray<E>> directory = new AtomicReferenceArray<>(16);
+
+    public E get(int index) {
+        AtomicReferenceArray<E> page = existingPage(index);
+        return page == null ? null : page.get(index & PAGE_MASK);
+    }
+
+    public void set(int index, E element) {
+        page(index).set(index & PAGE_MASK, element);
+    }
+
+    public E computeIfAbsent(int index, IntFunction<E> factory) {
+        AtomicReferenceArray<E> page = page(index);
+        E element = page.get(index & PAGE_MASK);
+        if (element != null) {
+            return element;
+        }
+        E created = factory.apply(index);
+        return page.compareAndSet(index & PAGE_MASK, null, created) ? created : page.get(index & PAGE_MASK);
+    }
+
+    //atomically replaces the element with the result of the function, the same way Map.merge does
+    public E merge(int index, E element, BinaryOperator<E> function) {
+        AtomicReferenceArray<E> page = page(index);
+        int offset = index & PAGE_MASK;
+        while (true) {
+            E current = page.get(offset);
+            E merged = current == null ? element : function.apply(current, element);
+            if (merged == current || page.compareAndSet(offset, current, merged)) {
+                return merged;
+            }
+        }
+    }
+
+    public void forEach(Consumer<E> action) {
+        AtomicReferenceArray<AtomicReferenceArray<E>> pages = directory;
+        for (int pageIndex = 0; pageIndex < pages.length(); pageIndex++) {
+            AtomicReferenceArray<E> page = pages.get(pageIndex);
+            if (page == null) {
+                continue;
+            }
+            for (int offset = 0; offset < PAGE_SIZE; offset++) {
+                E element = page.get(offset);
+                if (element != null) {
+                    action.accept(element);
+                }
+            }
+        }
+    }
+
+    private AtomicReferenceArray<E> existingPage(int index) {
+        AtomicReferenceArray<AtomicReferenceArray<E>> pages = directory;
+        int pageIndex = index >>> PAGE_BITS;
+        return pageIndex < pages.length() ? pages.get(pageIndex) : null;
+    }
+
+    private AtomicReferenceArray<E> page(int index) {
+        AtomicReferenceArray<E> page = existingPage(index);
+        return page != null ? page : addPage(index >>> PAGE_BITS);
+    }
+
+    private synchronized AtomicReferenceArray<E> addPage(int pageIndex) {
+        AtomicReferenceArray<AtomicReferenceArray<E>> pages = directory;
+        if (pageIndex >= pages.length()) {
+            int length = pages.length();
+            while (length <= pageIndex) {
+                length *= 2;
+            }
+            AtomicReferenceArray<AtomicReferenceArray<E>> grown = new AtomicReferenceArray<>(length);
+            for (int i = 0; i < pages.length(); i++) {
+                grown.set(i, pages.get(i));
+            }
+            pages = grown;
+        }
+        AtomicReferenceArray<E> page = pages.get(pageIndex);
+        if (page == null) {
+            page = new AtomicReferenceArray<>(PAGE_SIZE);
+            pages.set(pageIndex, page);
+        }
+        directory = pages;
+        return page;
+    }
+}
@@ -0,0 +1,78 @@
+package com.priceindicator.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//bounded multi-producer single-consumer ring buffer
+//every slot has its own sequence, so producers only contend on claiming a position and never take a lock
+public class MpscRingBuffer<E> {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong producerSequence = new AtomicLong();
+    private final AtomicLong consumerSequence = new AtomicLong();
+
+    public MpscRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 1) {
+            throw new IllegalArgumentException("Capacity should be positive");
+        }
+        //with a single slot the sequence of a full slot equals the sequence of the next free one, so two is minimum
+        capacity = Math.max(2, Integer.highestOneBit(requestedCapacity - 1) << 1);
+        mask = capacity - 1;
+        elements = new AtomicReferenceArray<>(capacity);
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    //returns false when the buffer is full
+    public boolean offer(E element) {
+        long position = producerSequence.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (producerSequence.compareAndSet(position, position + 1)) {
+                    elements.set(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = producerSequence.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = producerSequence.get();
+            }
+        }
+    }
+
+    //must be called from a single consumer thread only
+    public E poll() {
+        long position = consumerSequence.get();
+        int index = (int) (position & mask);
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        E element = elements.get(index);
+        elements.set(index, null);
+        sequences.set(index, position + capacity);
+        consumerSequence.set(position + 1);
+        return element;
+    }
+
+    public long producerPosition() {
+        return producerSequence.get();
+    }
+
+    public long consumerPosition() {
+        return consumerSequence.get();
+    }
+}
@@ -0,0 +1,145 @@
+package com.priceindicator.concurrent;
+
+import java.util.function.BinaryOperator;
+
+//immutable array indexed by dense int ids, organised as a radix tree of 32 slot nodes
+//an editor copies only the nodes on the paths it changes, all other nodes are shared with the previous version,
+//so a new version costs O(changed elements) and readers of older versions are never affected
+public final class PersistentArray<E> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final PersistentArray<?> EMPTY = new PersistentArray<>(new Node(null), 0, 0);
+
+    private final Node root;
+    //number of bits of the index resolved above the leaf level
+    private final int shift;
+    private final long version;
+
+    private PersistentArray(Node root, int shift, long version) {
+        this.root = root;
+        this.shift = shift;
+        this.version = version;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentArray<E> empty() {
+        return (PersistentArray<E>) EMPTY;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public E get(int index) {
+        return get(root, shift, index);
+    }
+
+    public Editor<E> edit() {
+        return new Editor<>(this);
+    }
+
+    //not thread safe, every version should be built by a single thread
+    public static final class Editor<E> {
+
+        private final Object owner = new Object();
+        private final long version;
+        private Node root;
+        private int shift;
+
+        private Editor(PersistentArray<E> base) {
+            this.root = base.root;
+            this.shift = base.shift;
+            this.version = base.version + 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E merge(int index, E element, BinaryOperator<E> function) {
+            Node leaf = editableLeaf(index);
+            E current = (E) leaf.slots[index & MASK];
+            E merged = current == null ? element : function.apply(current, element);
+            leaf.slots[index & MASK] = merged;
+            return merged;
+        }
+
+        //sees the elements changed by this editor as well
+        public E get(int index) {
+            if (root == null) {
+                throw new IllegalStateException("Version is already built");
+            }
+            return PersistentArray.get(root, shift, index);
+        }
+
+        public void set(int index, E element) {
+            editableLeaf(index).slots[index & MASK] = element;
+        }
+
+        public PersistentArray<E> build() {
+            //nodes owned by this editor become a part of an immutable version, so they are not changed anymore
+            PersistentArray<E> built = new PersistentArray<>(root, shift, version);
+            root = null;
+            return built;
+        }
+
+        private Node editableLeaf(int index) {
+            if (root == null) {
+                throw new IllegalStateException("Version is already built");
+            }
+            if (index < 0) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            while (shift + BITS < Integer.SIZE && index >>> (shift + BITS) != 0) {
+                Node grown = new Node(owner);
+                grown.slots[0] = root;
+                root = grown;
+                shift += BITS;
+            }
+            root = editable(root);
+            Node node = root;
+            for (int level = shift; level > 0; level -= BITS) {
+                int slot = (index >>> level) & MASK;
+                Node child = (Node) node.slots[slot];
+                child = child == null ? new Node(owner) : editable(child);
+                node.slots[slot] = child;
+                node = child;
+            }
+            return node;
+        }
+
+        private Node editable(Node node) {
+            return node.owner == owner ? node : new Node(owner, node.slots.clone());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> E get(Node root, int shift, int index) {
+        if (index < 0 || (shift + BITS < Integer.SIZE && index >>> (shift + BITS) != 0)) {
+            return null;
+        }
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Node) node.slots[(index >>> level) & MASK];
+            if (node == null) {
+                return null;
+            }
+        }
+        return (E) node.slots[index & MASK];
+    }
+
+    private static final class Node {
+
+        private final Object owner;
+        private final Object[] slots;
+
+        private Node(Object owner) {
+            this(owner, new Object[WIDTH]);
+        }
+
+        private Node(Object owner, Object[] slots) {
+            this.owner = owner;
+            this.slots = slots;
+        }
+    }
+}
@@ -8,8 +8,11 @@ public class BatchRunStatus {
     public enum Status {
         ANNOUNCED,
         IN_PROGRESS,
+        SEALING,
         CANCELED,
         FINISHED,
+        EXPIRED,
+        REJECTED,
         ERROR
     }
 
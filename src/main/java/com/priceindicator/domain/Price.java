@@ -10,4 +10,9 @@ public class Price {
     private InstrumentId id;
     private LocalDateTime asOf;
     private PricePayload payload;
+
+    //on equal asOf the second (incoming) price wins, the same way plain put would behave
+    public static Price latest(Price current, Price incoming) {
+        return incoming.getAsOf().isBefore(current.getAsOf()) ? current : incoming;
+    }
 }
@@ -1,48 +1,251 @@
 package com.priceindicator.repository;
 
 import com.priceindicator.domain.BatchRunId;
+import com.priceindicator.domain.BatchRunStatus.Status;
 import com.priceindicator.domain.Price;
 import com.priceindicator.domain.PriceBatch;
+import com.priceindicator.repository.exception.BatchClosedException;
+import com.priceindicator.repository.exception.BatchExpiredException;
 import com.priceindicator.repository.exception.BatchNotFoundException;
+import com.priceindicator.wal.WalRecord;
+import com.priceindicator.wal.WriteAheadLog;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public class BatchRepository {
 
-    private final ConcurrentMap<BatchRunId, CopyOnWriteArrayList<Price>> batchRuns = new ConcurrentHashMap<>();
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(30);
+
+    public enum StagingMode {
+        //every published price is staged and becomes part of the price history
+        FULL(ChunkedPriceBuffer::new),
+        //only the newest price per instrument is staged
+        LATEST(LatestPriceBuffer::new);
+
+        private final Supplier<PriceBuffer> bufferFactory;
+
+        StagingMode(Supplier<PriceBuffer> bufferFactory) {
+            this.bufferFactory = bufferFactory;
+        }
+    }
+
+    private final ConcurrentMap<BatchRunId, BatchRun> batchRuns = new ConcurrentHashMap<>();
+    //finished, canceled and expired run ids are remembered for one more ttl, so late publishers get a meaningful status
+    private final ConcurrentMap<BatchRunId, Status> closedBatchRuns = new ConcurrentHashMap<>();
+    private final DelayQueue<Expiry> expiries = new DelayQueue<>();
+    //released runs until their prices are published, keyed chunks tell the releasing caller from a late one
+    private final ConcurrentMap<BatchRunId, Iterator<List<Price>>> unpublishedRuns = new ConcurrentHashMap<>();
+    private final List<Consumer<BatchRunId>> closeListeners = new CopyOnWriteArrayList<>();
+    private final StagingMode stagingMode;
+    private final long ttlNanos;
+    private final WriteAheadLog writeAheadLog;
+    //estimated bytes staged by open runs, every run adds its appends and takes them off when it is closed
+    private final LongAdder stagedBytes = new LongAdder();
+    //System::nanoTime outside of tests, so expiry can be tested without sleeping
+    private final LongSupplier nanoClock;
+
+    public BatchRepository() {
+        this(StagingMode.FULL, DEFAULT_TTL);
+    }
+
+    public BatchRepository(StagingMode stagingMode, Duration ttl) {
+        this(stagingMode, ttl, new WriteAheadLog());
+    }
+
+    @Autowired
+    public BatchRepository(
+        @Value("${priceindicator.batch.staging-mode:FULL}") StagingMode stagingMode,
+        @Value("${priceindicator.batch.ttl:PT30M}") Duration ttl,
+        WriteAheadLog writeAheadLog) {
+        this(stagingMode, ttl, writeAheadLog, System::nanoTime);
+    }
+
+    BatchRepository(StagingMode stagingMode, Duration ttl, WriteAheadLog writeAheadLog, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.stagingMode = stagingMode;
+        this.ttlNanos = ttl.toNanos();
+        this.writeAheadLog = writeAheadLog;
+    }
 
     public void announceBatchRun(BatchRunId batchRunId) {
-        batchRuns.putIfAbsent(batchRunId, new CopyOnWriteArrayList<>());
+        batchRuns.computeIfAbsent(batchRunId, id -> {
+            writeAheadLog.append(WalRecord.announce(id));
+            expiries.add(new Expiry(id, nanoClock.getAsLong() + ttlNanos, false));
+            PriceBuffer prices = stagingMode.bufferFactory.get();
+            return new BatchRun(writeAheadLog.isEnabled() ? new JournaledPriceBuffer(id, prices, writeAheadLog) : prices, nanoClock, stagedBytes);
+        });
+        writeAheadLog.sync();
     }
 
     public void addPrices(PriceBatch batch) {
-        if (!batchRuns.containsKey(batch.getBatchRunId())) {
-            throw new BatchNotFoundException();
+        //appending to the buffer does not need the map lock, so publishers of the same run do not block each other
+        BatchRun batchRun = getBatchRun(batch.getBatchRunId());
+        if (!batchRun.append(batch.getPrices())) {
+            throw closedException(batchRun.getStatus());
         }
-
-        batchRuns.computeIfPresent(batch.getBatchRunId(),
-            (batchRunId, prices) -> {
-                prices.addAll(batch.getPrices());
-                return prices;
-            });
+        //the batch was logged while in flight, waiting for the commit is done outside, so finishing is not delayed
+        writeAheadLog.sync();
     }
 
     public void removeBatchRun(BatchRunId batchRunId) {
-        batchRuns.computeIfPresent(batchRunId, (id, prices) -> null);
+        BatchRun batchRun = batchRuns.get(batchRunId);
+        if (Objects.nonNull(batchRun) && batchRun.close(Status.CANCELED)) {
+            writeAheadLog.append(WalRecord.cancel(batchRunId));
+            forget(batchRunId, batchRun, Status.CANCELED);
+            writeAheadLog.sync();
+        }
     }
 
     public List<Price> releaseBatchRun(BatchRunId batchRunId) {
-        List<Price> prices = batchRuns.get(batchRunId);
-        if (Objects.isNull(prices)) {
-            return new ArrayList<>();
+        List<Price> prices = new ArrayList<>();
+        releaseBatchRunChunks(batchRunId).forEachRemaining(prices::addAll);
+        return prices;
+    }
+
+    //an unknown run or a run which is not sealed by the caller is released as an empty one
+    public Iterator<List<Price>> releaseBatchRunChunks(BatchRunId batchRunId) {
+        try {
+            return finishBatchRun(batchRunId);
+        } catch (BatchNotFoundException e) {
+            return Collections.emptyIterator();
+        }
+    }
+
+    //the run is removed right away, its staged prices are dropped chunk by chunk while the iterator is consumed
+    //only the caller which sealed the run releases it, others get the status the run is in or ended with
+    public Iterator<List<Price>> finishBatchRun(BatchRunId batchRunId) {
+        BatchRun batchRun = getBatchRun(batchRunId);
+        if (!batchRun.seal()) {
+            throw closedException(batchRun.getStatus());
+        }
+        Iterator<List<Price>> chunks = batchRun.drainSealed();
+        if (writeAheadLog.isEnabled()) {
+            unpublishedRuns.put(batchRunId, chunks);
+        }
+        writeAheadLog.append(WalRecord.finish(batchRunId));
+        forget(batchRunId, batchRun, Status.FINISHED);
+        writeAheadLog.sync();
+        return chunks;
+    }
+
+    //called with the released chunks once their prices are published, from then on the records of the run
+    //are covered by the next last price snapshot and the write-ahead log may drop them
+    public void batchRunPublished(BatchRunId batchRunId, Iterator<List<Price>> releasedChunks) {
+        if (unpublishedRuns.remove(batchRunId, releasedChunks)) {
+            writeAheadLog.published(batchRunId);
+        }
+    }
+
+    //open runs still accept batches, sealing and closed runs do not
+    public boolean isOpen(BatchRunId batchRunId) {
+        BatchRun batchRun = batchRuns.get(batchRunId);
+        return Objects.nonNull(batchRun) && batchRun.isOpen();
+    }
+
+    //listeners are called on the closing thread once a run is finished, canceled or expired
+    public void addCloseListener(Consumer<BatchRunId> listener) {
+        closeListeners.add(listener);
+    }
+
+    public int activeRunCount() {
+        return batchRuns.size();
+    }
+
+    //an estimate, see BatchRun.getStagedBytes, kept as a running total, so a metrics scrape does not visit the runs
+    public long stagedBytes() {
+        return stagedBytes.sum();
+    }
+
+    //there is one expiry per run and it is re-armed lazily from the last activity,
+    //so publishing never touches the delay queue
+    @Scheduled(fixedDelayString = "${priceindicator.batch.expiry-check-interval:PT1S}")
+    public void expireIdleBatchRuns() {
+        Expiry expiry;
+        while ((expiry = expiries.poll()) != null) {
+            if (expiry.tombstone) {
+                closedBatchRuns.remove(expiry.batchRunId);
+                continue;
+            }
+            BatchRun batchRun = batchRuns.get(expiry.batchRunId);
+            if (Objects.isNull(batchRun)) {
+                continue;
+            }
+            long deadline = batchRun.getLastActivityNanos() + ttlNanos;
+            if (deadline - nanoClock.getAsLong() > 0) {
+                expiries.add(new Expiry(expiry.batchRunId, deadline, false));
+            } else if (batchRun.close(Status.EXPIRED)) {
+                //logged as canceled, so an expired run is not recovered and does not hold log segments
+                writeAheadLog.append(WalRecord.cancel(expiry.batchRunId));
+                forget(expiry.batchRunId, batchRun, Status.EXPIRED);
+            }
+        }
+    }
+
+    //a removed run is looked up in the closed runs, so the caller gets the status it was closed with
+    private BatchRun getBatchRun(BatchRunId batchRunId) {
+        BatchRun batchRun = batchRuns.get(batchRunId);
+        if (Objects.isNull(batchRun)) {
+            Status closedStatus = closedBatchRuns.get(batchRunId);
+            if (Objects.isNull(closedStatus)) {
+                throw new BatchNotFoundException();
+            }
+            throw closedException(closedStatus);
+        }
+        return batchRun;
+    }
+
+    //the closed status is recorded before the run is removed, so a publisher always finds one of them
+    private void forget(BatchRunId batchRunId, BatchRun batchRun, Status status) {
+        closedBatchRuns.put(batchRunId, status);
+        expiries.add(new Expiry(batchRunId, nanoClock.getAsLong() + ttlNanos, true));
+        batchRuns.remove(batchRunId, batchRun);
+        batchRun.releaseStagedBytes();
+        closeListeners.forEach(listener -> listener.accept(batchRunId));
+    }
+
+    private static BatchClosedException closedException(Status status) {
+        return status == Status.EXPIRED ? new BatchExpiredException() : new BatchClosedException(status);
+    }
+
+    private class Expiry implements Delayed {
+
+        private final BatchRunId batchRunId;
+        private final long deadlineNanos;
+        private final boolean tombstone;
+
+        private Expiry(BatchRunId batchRunId, long deadlineNanos, boolean tombstone) {
+            this.batchRunId = batchRunId;
+            this.deadlineNanos = deadlineNanos;
+            this.tombstone = tombstone;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineNanos - nanoClock.getAsLong(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(deadlineNanos, ((Expiry) other).deadlineNanos);
         }
-        removeBatchRun(batchRunId);
-        return new ArrayList<>(prices);
     }
 }
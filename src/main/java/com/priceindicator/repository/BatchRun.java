@@ -0,0 +1,147 @@
+package com.priceindicator.repository;
+
+import com.priceindicator.domain.BatchRunStatus.Status;
+import com.priceindicator.domain.Price;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+//run state machine: ANNOUNCED -> IN_PROGRESS -> SEALING -> FINISHED, or CANCELED/EXPIRED from the first two
+//the status and the number of in-flight appends share one atomic word, so an append either starts before
+//the run is sealed and is waited for, or it sees the seal and is rejected
+public class BatchRun {
+
+    private static final long IN_FLIGHT_MASK = 0xFFFF_FFFFL;
+    private static final Status[] STATUSES = Status.values();
+
+    private final PriceBuffer prices;
+    private final AtomicLong state = new AtomicLong(encode(Status.ANNOUNCED, 0));
+    private final LongSupplier nanoClock;
+    private volatile long lastActivityNanos;
+    private final LongAdder stagedBytes = new LongAdder();
+    //shared by all runs of a repository, so its total is read without visiting the runs
+    private final LongAdder totalStagedBytes;
+
+    public BatchRun(PriceBuffer prices) {
+        this(prices, System::nanoTime, new LongAdder());
+    }
+
+    //the clock is the same one the repository uses for expiry
+    public BatchRun(PriceBuffer prices, LongSupplier nanoClock, LongAdder totalStagedBytes) {
+        this.prices = prices;
+        this.nanoClock = nanoClock;
+        this.totalStagedBytes = totalStagedBytes;
+        this.lastActivityNanos = nanoClock.getAsLong();
+    }
+
+    //returns false when the run is not open for appends anymore
+    public boolean append(List<Price> newPrices) {
+        long current;
+        do {
+            current = state.get();
+            if (!isOpen(statusOf(current))) {
+                return false;
+            }
+        } while (!state.compareAndSet(current, encode(Status.IN_PROGRESS, inFlight(current) + 1)));
+
+        try {
+            prices.add(newPrices);
+            long size = sizeOf(newPrices);
+            stagedBytes.add(size);
+            totalStagedBytes.add(size);
+            lastActivityNanos = nanoClock.getAsLong();
+        } finally {
+            state.decrementAndGet();
+        }
+        return true;
+    }
+
+    //only one caller can seal the run, appends started before the seal are still running
+    public boolean seal() {
+        return transition(Status.SEALING);
+    }
+
+    //waits only for the appends which were in flight when the run was sealed,
+    //nothing can be appended afterwards, so the staged chunks are handed out without copying them
+    public Iterator<List<Price>> drainSealed() {
+        if (getStatus() != Status.SEALING) {
+            throw new IllegalStateException("Batch run is not sealed");
+        }
+        while (inFlight(state.get()) != 0) {
+            Thread.onSpinWait();
+        }
+        state.set(encode(Status.FINISHED, 0));
+        return prices.drainChunks();
+    }
+
+    public boolean close(Status status) {
+        return transition(status);
+    }
+
+    //called once the run is closed, nothing is appended afterwards, so its bytes are taken off the total exactly
+    public void releaseStagedBytes() {
+        while (inFlight(state.get()) != 0) {
+            Thread.onSpinWait();
+        }
+        totalStagedBytes.add(-stagedBytes.sum());
+    }
+
+    public boolean isOpen() {
+        return isOpen(getStatus());
+    }
+
+    public Status getStatus() {
+        return statusOf(state.get());
+    }
+
+    public PriceBuffer getPrices() {
+        return prices;
+    }
+
+    public long getLastActivityNanos() {
+        return lastActivityNanos;
+    }
+
+    //estimated as UTF-16 chars of instrument ids and payloads, object overhead is not counted,
+    //replaced prices of LATEST staging are counted as well
+    public long getStagedBytes() {
+        return stagedBytes.sum();
+    }
+
+    private boolean transition(Status target) {
+        long current;
+        do {
+            current = state.get();
+            if (!isOpen(statusOf(current))) {
+                return false;
+            }
+        } while (!state.compareAndSet(current, encode(target, inFlight(current))));
+        return true;
+    }
+
+    private static long sizeOf(List<Price> newPrices) {
+        long size = 0;
+        for (Price price : newPrices) {
+            size += (long) Character.BYTES * (price.getId().getInstrumentId().length() + price.getPayload().getPayload().length());
+        }
+        return size;
+    }
+
+    private static boolean isOpen(Status status) {
+        return status == Status.ANNOUNCED || status == Status.IN_PROGRESS;
+    }
+
+    private static long encode(Status status, long inFlight) {
+        return ((long) status.ordinal() << Integer.SIZE) | inFlight;
+    }
+
+    private static Status statusOf(long state) {
+        return STATUSES[(int) (state >>> Integer.SIZE)];
+    }
+
+    private static long inFlight(long state) {
+        return state & IN_FLIGHT_MASK;
+    }
+}
@@ -0,0 +1,75 @@
+package com.priceindicator.repository;
+
+import com.priceindicator.domain.Price;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+//every published batch is kept as a separate chunk, so appending never copies already staged prices
+//chunks are striped by publishing thread and stitched together only once, when the run is drained
+public class ChunkedPriceBuffer implements PriceBuffer {
+
+    private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+
+    private final List<ConcurrentLinkedQueue<List<Price>>> stripes = new ArrayList<>(STRIPES);
+    private final LongAdder size = new LongAdder();
+
+    public ChunkedPriceBuffer() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    @Override
+    public void add(List<Price> prices) {
+        stripes.get((int) Thread.currentThread().getId() & (STRIPES - 1)).add(new ArrayList<>(prices));
+        size.add(prices.size());
+    }
+
+    @Override
+    public int size() {
+        return size.intValue();
+    }
+
+    @Override
+    public List<Price> drain() {
+        List<Price> prices = new ArrayList<>(size());
+        drainChunks().forEachRemaining(prices::addAll);
+        return prices;
+    }
+
+    //published batches are handed out as they were staged, a chunk is removed from its stripe when it is returned
+    @Override
+    public Iterator<List<Price>> drainChunks() {
+        return new Iterator<>() {
+
+            private int stripe;
+            private List<Price> next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && stripe < STRIPES) {
+                    next = stripes.get(stripe).poll();
+                    if (next == null) {
+                        stripe++;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public List<Price> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<Price> chunk = next;
+                next = null;
+                size.add(-chunk.size());
+                return chunk;
+            }
+        };
+    }
+}
@@ -0,0 +1,345 @@
+package com.priceindicator.repository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.priceindicator.codec.Lz4;
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PricePayload;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.StampedLock;
+
+//keeps asOf as epoch nanos and payloads as bytes in a per-instrument arena instead of Price objects,
+//prices live in [head, head + size) of the columns ordered by asOf
+//the arena of a history which is not accessed for a while is compressed, the next access decompresses it again
+public class ColumnarPriceHistory implements PriceHistory {
+
+    private static final int INITIAL_CAPACITY = 4;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final InstrumentId instrumentId;
+    private final StampedLock lock = new StampedLock();
+
+    private long[] asOfNanos = new long[INITIAL_CAPACITY];
+    private int[] payloadOffsets = new int[INITIAL_CAPACITY];
+    private int[] payloadLengths = new int[INITIAL_CAPACITY];
+    private byte[] arena = new byte[INITIAL_CAPACITY * 16];
+    //set instead of the arena while the history is cold, arenaSize keeps the uncompressed size
+    private byte[] compressedArena;
+    //set by every read and write, cleared by compressIfIdle
+    private volatile boolean accessed = true;
+    private int arenaSize;
+    private int liveArenaBytes;
+    private int head;
+    private int size;
+
+    public ColumnarPriceHistory(InstrumentId instrumentId) {
+        this.instrumentId = instrumentId;
+    }
+
+    @Override
+    public void add(Price price) {
+        long nanos = toNanos(price.getAsOf());
+        byte[] payload = price.getPayload().getPayload().getBytes(UTF_8);
+        long stamp = lock.writeLock();
+        try {
+            promote();
+            insert(nanos, payload);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void addAll(List<Price> sortedPrices) {
+        //encoding is done before taking the lock, so the whole run is inserted under a single write lock
+        long[] nanos = new long[sortedPrices.size()];
+        byte[][] payloads = new byte[sortedPrices.size()][];
+        for (int i = 0; i < nanos.length; i++) {
+            Price price = sortedPrices.get(i);
+            nanos[i] = toNanos(price.getAsOf());
+            payloads[i] = price.getPayload().getPayload().getBytes(UTF_8);
+        }
+        long stamp = lock.writeLock();
+        try {
+            promote();
+            for (int i = 0; i < nanos.length; i++) {
+                insert(nanos[i], payloads[i]);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Optional<Price> floor(LocalDateTime asOf) {
+        long nanos = toQueryNanos(asOf);
+        long stamp = readLockHot();
+        try {
+            int position = search(nanos);
+            if (position < head + size && asOfNanos[position] == nanos) {
+                return Optional.of(priceAt(position));
+            }
+            return position == head ? Optional.empty() : Optional.of(priceAt(position - 1));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public List<Price> range(LocalDateTime from, LocalDateTime to) {
+        long fromNanos = toQueryNanos(from);
+        long toNanos = toQueryNanos(to);
+        long stamp = readLockHot();
+        try {
+            List<Price> prices = new ArrayList<>();
+            for (int position = search(fromNanos); position < head + size && asOfNanos[position] <= toNanos; position++) {
+                prices.add(priceAt(position));
+            }
+            return prices;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void retainLast(int count) {
+        long stamp = lock.writeLock();
+        try {
+            evict(size - count);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void retainFrom(LocalDateTime from) {
+        long fromNanos = toQueryNanos(from);
+        long stamp = lock.writeLock();
+        try {
+            evict(search(fromNanos) - head);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //a history is compressed only when it was not accessed since the previous call,
+    //compression runs under the read lock, so readers are not blocked while it is running
+    @Override
+    public long compressIfIdle() {
+        if (accessed) {
+            accessed = false;
+            return 0;
+        }
+        byte[] plain;
+        int plainSize;
+        byte[] compressed;
+        long stamp = lock.readLock();
+        try {
+            if (arena == null) {
+                return arenaSize - compressedArena.length;
+            }
+            if (arenaSize == 0) {
+                return 0;
+            }
+            plain = arena;
+            plainSize = arenaSize;
+            compressed = Lz4.compress(arena, 0, arenaSize);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        if (compressed.length >= plainSize) {
+            return 0;
+        }
+        stamp = lock.writeLock();
+        try {
+            //an access in between makes the history hot again
+            if (accessed || arena != plain || arenaSize != plainSize) {
+                return 0;
+            }
+            arena = null;
+            compressedArena = compressed;
+            return plainSize - compressed.length;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //the first reader of a cold history decompresses it, the read lock is taken back without letting a writer in
+    private long readLockHot() {
+        markAccessed();
+        long stamp = lock.readLock();
+        if (arena != null) {
+            return stamp;
+        }
+        lock.unlockRead(stamp);
+        stamp = lock.writeLock();
+        promote();
+        return lock.tryConvertToReadLock(stamp);
+    }
+
+    private void promote() {
+        markAccessed();
+        if (arena == null) {
+            arena = Lz4.decompress(compressedArena, arenaSize);
+            compressedArena = null;
+        }
+    }
+
+    //the flag is written only when it changes, so hot reads do not keep writing a shared field
+    private void markAccessed() {
+        if (!accessed) {
+            accessed = true;
+        }
+    }
+
+    private void insert(long nanos, byte[] payload) {
+        //prices mostly come in time order, so the insert position is usually the end
+        int position = size == 0 || asOfNanos[head + size - 1] < nanos ? head + size : search(nanos);
+        if (position < head + size && asOfNanos[position] == nanos) {
+            return;
+        }
+        int index = position - head;
+        ensureCapacity();
+        position = head + index;
+        int end = head + size;
+        if (position < end) {
+            System.arraycopy(asOfNanos, position, asOfNanos, position + 1, end - position);
+            System.arraycopy(payloadOffsets, position, payloadOffsets, position + 1, end - position);
+            System.arraycopy(payloadLengths, position, payloadLengths, position + 1, end - position);
+        }
+        asOfNanos[position] = nanos;
+        payloadOffsets[position] = appendPayload(payload);
+        payloadLengths[position] = payload.length;
+        size++;
+    }
+
+    //first position in [head, head + size) with asOf not before the given nanos
+    private int search(long nanos) {
+        int low = head;
+        int high = head + size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (asOfNanos[middle] < nanos) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void evict(int count) {
+        for (int i = 0; i < count; i++) {
+            liveArenaBytes -= payloadLengths[head];
+            head++;
+            size--;
+        }
+        if (size == 0) {
+            head = 0;
+            arenaSize = 0;
+            if (arena == null) {
+                arena = new byte[INITIAL_CAPACITY * 16];
+                compressedArena = null;
+            }
+        }
+        //evicted payload bytes are reclaimed once they take more than a half of the arena,
+        //a cold arena keeps them until it is decompressed, so retention sweeps do not make histories hot
+        if (arena != null && arenaSize > 2 * liveArenaBytes + INITIAL_CAPACITY * 16) {
+            compactArena();
+        }
+    }
+
+    private void ensureCapacity() {
+        if (head + size < asOfNanos.length) {
+            return;
+        }
+        int capacity = size < asOfNanos.length / 2 ? asOfNanos.length : asOfNanos.length * 2;
+        asOfNanos = shift(asOfNanos, capacity);
+        payloadOffsets = shift(payloadOffsets, capacity);
+        payloadLengths = shift(payloadLengths, capacity);
+        head = 0;
+    }
+
+    private long[] shift(long[] column, int capacity) {
+        long[] shifted = new long[capacity];
+        System.arraycopy(column, head, shifted, 0, size);
+        return shifted;
+    }
+
+    private int[] shift(int[] column, int capacity) {
+        int[] shifted = new int[capacity];
+        System.arraycopy(column, head, shifted, 0, size);
+        return shifted;
+    }
+
+    private int appendPayload(byte[] payload) {
+        if (arenaSize + payload.length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + payload.length));
+        }
+        int offset = arenaSize;
+        System.arraycopy(payload, 0, arena, offset, payload.length);
+        arenaSize += payload.length;
+        liveArenaBytes += payload.length;
+        return offset;
+    }
+
+    private void compactArena() {
+        byte[] compacted = new byte[Math.max(INITIAL_CAPACITY * 16, liveArenaBytes * 2)];
+        int compactedSize = 0;
+        for (int position = head; position < head + size; position++) {
+            System.arraycopy(arena, payloadOffsets[position], compacted, compactedSize, payloadLengths[position]);
+            payloadOffsets[position] = compactedSize;
+            compactedSize += payloadLengths[position];
+        }
+        arena = compacted;
+        arenaSize = compactedSize;
+    }
+
+    private Price priceAt(int position) {
+        return Price.builder()
+            .id(instrumentId)
+            .asOf(fromNanos(asOfNanos[position]))
+            .payload(PricePayload.of(new String(arena, payloadOffsets[position], payloadLengths[position], UTF_8)))
+            .build();
+    }
+
+    //only asOf between 1677 and 2262 fits epoch nanos, prices outside of it are rejected instead of wrapping around
+    static long toNanos(LocalDateTime dateTime) {
+        try {
+            return Math.addExact(Math.multiplyExact(dateTime.toEpochSecond(ZoneOffset.UTC), NANOS_PER_SECOND),
+                dateTime.getNano());
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("asOf " + dateTime + " is out of the range of the columnar store", e);
+        }
+    }
+
+    //query bounds outside of the range are clamped, every stored price is within it, so answers stay the same
+    private static long toQueryNanos(LocalDateTime dateTime) {
+        try {
+            return toNanos(dateTime);
+        } catch (IllegalArgumentException e) {
+            return dateTime.getYear() < 1970 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+    }
+
+    private static LocalDateTime fromNanos(long nanos) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, NANOS_PER_SECOND),
+            (int) Math.floorMod(nanos, NANOS_PER_SECOND), ZoneOffset.UTC);
+    }
+}
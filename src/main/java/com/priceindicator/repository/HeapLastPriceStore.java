@@ -0,0 +1,95 @@
+package com.priceindicator.repository;
+
+import static java.util.Objects.isNull;
+
+import com.priceindicator.concurrent.PersistentArray;
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+//every publish makes a new immutable version, so readers always see whole runs and never wait
+class HeapLastPriceStore implements LastPriceStore {
+
+    private final InstrumentIdRegistry instrumentIdRegistry;
+    private volatile PersistentArray<Price> prices = PersistentArray.empty();
+    //only touched by the writer, null when nothing is merged since the previous publish
+    private PersistentArray.Editor<Price> editor;
+
+    HeapLastPriceStore(InstrumentIdRegistry instrumentIdRegistry) {
+        this.instrumentIdRegistry = instrumentIdRegistry;
+    }
+
+    @Override
+    public MergeResult merge(int index, Price price) {
+        if (isNull(editor)) {
+            editor = prices.edit();
+        }
+        Price current = editor.get(index);
+        if (!isNull(current) && price.getAsOf().isBefore(current.getAsOf())) {
+            return MergeResult.OLDER;
+        }
+        if (isNull(current) || !current.getPayload().equals(price.getPayload())) {
+            editor.set(index, price);
+            return MergeResult.CHANGED;
+        }
+        //a republished payload is not copied, the stored one is kept, and an unchanged price is not written at all
+        //asOf still moves forward, so a late price older than the republished one can not win later,
+        //which costs a new price and a copy of its path in the version just like a changed price
+        if (price.getAsOf().isAfter(current.getAsOf())) {
+            editor.set(index, Price.builder().id(current.getId()).asOf(price.getAsOf()).payload(current.getPayload()).build());
+        }
+        return MergeResult.SAME_PAYLOAD;
+    }
+
+    @Override
+    public void publish() {
+        if (!isNull(editor)) {
+            prices = editor.build();
+            editor = null;
+        }
+    }
+
+    //nothing of the failed run was visible yet, so it is simply dropped
+    @Override
+    public void abort() {
+        editor = null;
+    }
+
+    @Override
+    public Price get(InstrumentId instrumentId) {
+        return get(prices, instrumentId);
+    }
+
+    @Override
+    public void forEach(Collection<InstrumentId> instrumentIds, BiConsumer<InstrumentId, Price> visitor) {
+        PersistentArray<Price> version = prices;
+        for (InstrumentId instrumentId : instrumentIds) {
+            visitor.accept(instrumentId, get(version, instrumentId));
+        }
+    }
+
+    @Override
+    public List<Price> prices() {
+        PersistentArray<Price> version = prices;
+        int registered = instrumentIdRegistry.size();
+        List<Price> versionPrices = new ArrayList<>(registered);
+        for (int index = 0; index < registered; index++) {
+            Price price = version.get(index);
+            if (!isNull(price)) {
+                versionPrices.add(price);
+            }
+        }
+        return versionPrices;
+    }
+
+    private Price get(PersistentArray<Price> version, InstrumentId instrumentId) {
+        if (isNull(instrumentId)) {
+            return null;
+        }
+        int index = instrumentIdRegistry.indexOf(instrumentId);
+        return index == InstrumentIdRegistry.UNKNOWN ? null : version.get(index);
+    }
+}
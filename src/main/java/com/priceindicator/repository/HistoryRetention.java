@@ -0,0 +1,64 @@
+package com.priceindicator.repository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class HistoryRetention {
+
+    public enum Policy {
+        ALL,
+        COUNT,
+        WINDOW,
+        NONE
+    }
+
+    private final Policy policy;
+    private final int maxPricesPerInstrument;
+    private final Duration window;
+
+    @Autowired
+    public HistoryRetention(
+        @Value("${priceindicator.history.retention:ALL}") Policy policy,
+        @Value("${priceindicator.history.max-prices-per-instrument:1000}") int maxPricesPerInstrument,
+        @Value("${priceindicator.history.window:PT24H}") Duration window) {
+        this.policy = policy;
+        this.maxPricesPerInstrument = maxPricesPerInstrument;
+        this.window = window;
+    }
+
+    public static HistoryRetention keepAll() {
+        return new HistoryRetention(Policy.ALL, Integer.MAX_VALUE, Duration.ZERO);
+    }
+
+    public static HistoryRetention keepLast(int count) {
+        return new HistoryRetention(Policy.COUNT, count, Duration.ZERO);
+    }
+
+    public static HistoryRetention keepWithin(Duration window) {
+        return new HistoryRetention(Policy.WINDOW, Integer.MAX_VALUE, window);
+    }
+
+    public static HistoryRetention keepNone() {
+        return new HistoryRetention(Policy.NONE, 0, Duration.ZERO);
+    }
+
+    public boolean keepsHistory() {
+        return policy != Policy.NONE;
+    }
+
+    public boolean expiresByTime() {
+        return policy == Policy.WINDOW;
+    }
+
+    public void evict(PriceHistory history) {
+        if (policy == Policy.COUNT) {
+            history.retainLast(maxPricesPerInstrument);
+        } else if (policy == Policy.WINDOW) {
+            history.retainFrom(LocalDateTime.now().minus(window));
+        }
+    }
+}
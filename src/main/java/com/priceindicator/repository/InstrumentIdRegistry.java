@@ -0,0 +1,47 @@
+package com.priceindicator.repository;
+
+import com.priceindicator.concurrent.ConcurrentPagedArray;
+import com.priceindicator.domain.InstrumentId;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.stereotype.Component;
+
+//assigns every instrument a dense int index at first sight,
+//so repositories can keep their data in arrays and hash the instrument id only once per operation
+//indexes are never reused, so the registry grows with the instrument universe
+@Component
+public class InstrumentIdRegistry {
+
+    public static final int UNKNOWN = -1;
+
+    private final ConcurrentMap<InstrumentId, Integer> indexes = new ConcurrentHashMap<>();
+    private final ConcurrentPagedArray<InstrumentId> instrumentIds = new ConcurrentPagedArray<>();
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    public int register(InstrumentId instrumentId) {
+        Integer index = indexes.get(instrumentId);
+        if (index != null) {
+            return index;
+        }
+        return indexes.computeIfAbsent(instrumentId, id -> {
+            int newIndex = nextIndex.getAndIncrement();
+            instrumentIds.set(newIndex, id);
+            return newIndex;
+        });
+    }
+
+    public int indexOf(InstrumentId instrumentId) {
+        Integer index = indexes.get(instrumentId);
+        return index == null ? UNKNOWN : index;
+    }
+
+    //the instance registered first, so data kept per instrument shares one id instance
+    public InstrumentId instrumentAt(int index) {
+        return instrumentIds.get(index);
+    }
+
+    public int size() {
+        return nextIndex.get();
+    }
+}
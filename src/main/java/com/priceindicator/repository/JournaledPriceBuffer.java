@@ -0,0 +1,44 @@
+package com.priceindicator.repository;
+
+import com.priceindicator.domain.BatchRunId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.wal.WalRecord;
+import com.priceindicator.wal.WriteAheadLog;
+import java.util.Iterator;
+import java.util.List;
+
+//logs every staged batch before it is added, the run counts it as in flight,
+//so a finishing run is logged only after all of its accepted batches
+public class JournaledPriceBuffer implements PriceBuffer {
+
+    private final BatchRunId batchRunId;
+    private final PriceBuffer prices;
+    private final WriteAheadLog writeAheadLog;
+
+    public JournaledPriceBuffer(BatchRunId batchRunId, PriceBuffer prices, WriteAheadLog writeAheadLog) {
+        this.batchRunId = batchRunId;
+        this.prices = prices;
+        this.writeAheadLog = writeAheadLog;
+    }
+
+    @Override
+    public void add(List<Price> newPrices) {
+        writeAheadLog.append(WalRecord.publish(batchRunId, newPrices));
+        prices.add(newPrices);
+    }
+
+    @Override
+    public int size() {
+        return prices.size();
+    }
+
+    @Override
+    public List<Price> drain() {
+        return prices.drain();
+    }
+
+    @Override
+    public Iterator<List<Price>> drainChunks() {
+        return prices.drainChunks();
+    }
+}
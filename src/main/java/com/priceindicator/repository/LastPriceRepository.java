@@ -5,25 +5,201 @@ import static java.util.Objects.isNull;
 import com.priceindicator.domain.InstrumentId;
 import com.priceindicator.domain.Price;
 import com.priceindicator.domain.PricePayload;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public class LastPriceRepository {
 
-    private final Map<InstrumentId, Price> prices = new ConcurrentHashMap<>();
+    public enum Store {
+        //prices are kept in immutable heap versions, readers never wait
+        HEAP(HeapLastPriceStore::new),
+        //prices are kept in direct buffers outside of the heap, readers wait while a finished run is copied in
+        OFF_HEAP(OffHeapLastPriceStore::new);
+
+        private final Function<InstrumentIdRegistry, LastPriceStore> storeFactory;
+
+        Store(Function<InstrumentIdRegistry, LastPriceStore> storeFactory) {
+            this.storeFactory = storeFactory;
+        }
+    }
+
+    private static final int SNAPSHOT_LOAD_CHUNK = 4096;
+
+    private final InstrumentIdRegistry instrumentIdRegistry;
+    //every finished run is published at once, so readers always see whole runs
+    private final LastPriceStore prices;
+    //bumped after every publish, so caches of last prices know when they are stale
+    private volatile long version;
+    //prices which became last prices, split by whether their payload was new or equal to the stored one
+    private volatile long writtenPrices;
+    private volatile long deduplicatedPrices;
+    //set while a snapshot is being copied to the store, its prices are served directly from the mapped file
+    private volatile LastPriceSnapshot snapshot;
+    //notified with the prices which became the last prices of their instruments with a new payload,
+    //after the run is published
+    private final List<Consumer<List<Price>>> changeListeners = new CopyOnWriteArrayList<>();
+
+    public LastPriceRepository() {
+        this(new InstrumentIdRegistry());
+    }
+
+    public LastPriceRepository(InstrumentIdRegistry instrumentIdRegistry) {
+        this(instrumentIdRegistry, Store.HEAP);
+    }
+
+    @Autowired
+    public LastPriceRepository(
+        InstrumentIdRegistry instrumentIdRegistry,
+        @Value("${priceindicator.last-price.store:HEAP}") Store store) {
+        this.instrumentIdRegistry = instrumentIdRegistry;
+        this.prices = store.storeFactory.apply(instrumentIdRegistry);
+    }
 
     public void addPrices(Map<InstrumentId, Price> newPrices) {
-        prices.putAll(newPrices);
+        LatestPrices latestPrices = new LatestPrices(instrumentIdRegistry, newPrices.size());
+        newPrices.values().forEach(price -> latestPrices.add(instrumentIdRegistry.register(price.getId()), price));
+        addPrices(latestPrices);
+    }
+
+    //writers are serialized, so an older price can never overwrite a newer one
+    //listeners are called in publishing order, so they never see an older price after a newer one
+    synchronized void addPrices(LatestPrices newPrices) {
+        //indexes resolved by the price repository are reused, unless they come from another registry
+        boolean sameRegistry = newPrices.registry() == instrumentIdRegistry;
+        List<Price> changed = changeListeners.isEmpty() ? null : new ArrayList<>(newPrices.size());
+        long written = 0;
+        long deduplicated = 0;
+        try {
+            for (int i = 0; i < newPrices.size(); i++) {
+                Price price = newPrices.priceAt(i);
+                int index = sameRegistry ? newPrices.indexAt(i) : instrumentIdRegistry.register(price.getId());
+                LastPriceStore.MergeResult result = prices.merge(index, price);
+                if (result == LastPriceStore.MergeResult.CHANGED) {
+                    written++;
+                    if (!isNull(changed)) {
+                        changed.add(price);
+                    }
+                } else if (result == LastPriceStore.MergeResult.SAME_PAYLOAD) {
+                    deduplicated++;
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            abort();
+            throw e;
+        }
+        prices.publish();
+        writtenPrices += written;
+        deduplicatedPrices += deduplicated;
+        version++;
+        if (!isNull(changed) && !changed.isEmpty()) {
+            changeListeners.forEach(listener -> listener.accept(changed));
+        }
+    }
+
+    //the store may already show prices of the failed run, so caches are told the prices changed
+    private void abort() {
+        prices.abort();
+        version++;
+    }
+
+    public long writtenPrices() {
+        return writtenPrices;
+    }
+
+    public long deduplicatedPrices() {
+        return deduplicatedPrices;
+    }
+
+    //listeners are called on the finishing thread, so they must only hand the prices over
+    public void addChangeListener(Consumer<List<Price>> listener) {
+        changeListeners.add(listener);
+    }
+
+    public long version() {
+        return version;
     }
 
     public Optional<PricePayload> getPriceById(InstrumentId instrumentId) {
-        if (isNull(instrumentId) || !prices.containsKey(instrumentId)) {
-            return Optional.empty();
+        Price price = withSnapshot(instrumentId, prices.get(instrumentId));
+        return isNull(price) ? Optional.empty() : Optional.of(price.getPayload());
+    }
+
+    //visits only found prices and the heap store does not allocate anything per visited price,
+    //all prices are taken from the same version, so they never mix two runs
+    //returns the number of visited prices
+    public int forEachPrice(Collection<InstrumentId> instrumentIds, BiConsumer<InstrumentId, PricePayload> visitor) {
+        int[] found = new int[1];
+        prices.forEach(instrumentIds, (instrumentId, storedPrice) -> {
+            Price price = withSnapshot(instrumentId, storedPrice);
+            if (!isNull(price)) {
+                visitor.accept(instrumentId, price.getPayload());
+                found[0]++;
+            }
+        });
+        return found[0];
+    }
+
+    //reads are served from the snapshot right away, the store is filled in chunks, so writers are not blocked for long
+    public CompletableFuture<Void> loadSnapshot(LastPriceSnapshot loadedSnapshot) {
+        snapshot = loadedSnapshot;
+        return CompletableFuture.runAsync(() -> {
+            for (int from = 0; from < loadedSnapshot.size(); from += SNAPSHOT_LOAD_CHUNK) {
+                int to = Math.min(from + SNAPSHOT_LOAD_CHUNK, loadedSnapshot.size());
+                synchronized (this) {
+                    try {
+                        for (int entry = from; entry < to; entry++) {
+                            Price price = loadedSnapshot.priceAt(entry);
+                            prices.merge(instrumentIdRegistry.register(price.getId()), price);
+                        }
+                    } catch (RuntimeException | Error e) {
+                        //the snapshot keeps serving reads, so prices of the dropped chunk are not lost
+                        abort();
+                        throw e;
+                    }
+                    prices.publish();
+                    version++;
+                }
+            }
+            snapshot = null;
+        }, task -> {
+            Thread loader = new Thread(task, "snapshot-loader");
+            loader.setDaemon(true);
+            loader.start();
+        });
+    }
+
+    //all prices are taken from the same version, so the snapshot never mixes two runs
+    public void writeSnapshot(Path file) throws IOException {
+        if (!isNull(snapshot)) {
+            throw new IllegalStateException("Previous snapshot is still being loaded");
         }
-        return Optional.of(prices.get(instrumentId).getPayload());
+        LastPriceSnapshot.write(file, prices.prices());
     }
-}
 
+    private Price withSnapshot(InstrumentId instrumentId, Price price) {
+        LastPriceSnapshot loadingSnapshot = snapshot;
+        if (isNull(loadingSnapshot) || isNull(instrumentId)) {
+            return price;
+        }
+        //the store may already have an older price written before the snapshot entry was copied
+        Price snapshotPrice = loadingSnapshot.get(instrumentId);
+        if (isNull(price) || isNull(snapshotPrice)) {
+            return isNull(price) ? snapshotPrice : price;
+        }
+        return Price.latest(snapshotPrice, price);
+    }
+}
@@ -0,0 +1,165 @@
+package com.priceindicator.repository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PricePayload;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+//read-only last prices mapped from a file, nothing is copied to the heap until a price is asked for
+//layout: header (magic, number of prices), index of fixed size entries ordered by instrument id hash
+//(hash, asOf seconds and nanos in UTC, data offset), data region with instrument id and payload bytes
+public final class LastPriceSnapshot {
+
+    private static final int MAGIC = 0x4C505331;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int ENTRY_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final ByteBuffer buffer;
+    private final int size;
+
+    private LastPriceSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.size = buffer.getInt(Integer.BYTES);
+    }
+
+    public static LastPriceSnapshot map(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a last price snapshot: " + file);
+        }
+        return new LastPriceSnapshot(buffer);
+    }
+
+    //written to a temporary file first, so a crash while writing never leaves a broken snapshot behind
+    public static void write(Path file, List<Price> prices) throws IOException {
+        Price[] sorted = prices.toArray(new Price[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(price -> hash(price.getId())));
+        byte[][] ids = new byte[sorted.length][];
+        byte[][] payloads = new byte[sorted.length][];
+        long fileSize = HEADER_SIZE + (long) sorted.length * ENTRY_SIZE;
+        for (int i = 0; i < sorted.length; i++) {
+            ids[i] = sorted[i].getId().getInstrumentId().getBytes(UTF_8);
+            payloads[i] = sorted[i].getPayload().getPayload().getBytes(UTF_8);
+            fileSize += 2 * Integer.BYTES + ids[i].length + payloads[i].length;
+        }
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("Last price snapshot is too large to be mapped: " + fileSize + " bytes");
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, fileSize);
+            buffer.putInt(MAGIC).putInt(sorted.length);
+            int dataOffset = HEADER_SIZE + sorted.length * ENTRY_SIZE;
+            for (int i = 0; i < sorted.length; i++) {
+                LocalDateTime asOf = sorted[i].getAsOf();
+                buffer.putInt(hash(sorted[i].getId()))
+                    .putLong(asOf.toEpochSecond(ZoneOffset.UTC))
+                    .putInt(asOf.getNano())
+                    .putLong(dataOffset);
+                dataOffset += 2 * Integer.BYTES + ids[i].length + payloads[i].length;
+            }
+            for (int i = 0; i < sorted.length; i++) {
+                buffer.putInt(ids[i].length).put(ids[i]).putInt(payloads[i].length).put(payloads[i]);
+            }
+            buffer.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Price get(InstrumentId instrumentId) {
+        int hash = hash(instrumentId);
+        byte[] id = instrumentId.getInstrumentId().getBytes(UTF_8);
+        //entries with the same hash are next to each other, the first one is found by a binary search
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (hashAt(middle) < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int entry = low; entry < size && hashAt(entry) == hash; entry++) {
+            if (idEquals(entry, id)) {
+                return priceAt(entry, instrumentId);
+            }
+        }
+        return null;
+    }
+
+    public Price priceAt(int entry) {
+        return priceAt(entry, InstrumentId.of(readString(dataOffset(entry))));
+    }
+
+    private Price priceAt(int entry, InstrumentId instrumentId) {
+        int offset = entryOffset(entry) + Integer.BYTES;
+        int dataOffset = dataOffset(entry);
+        int payloadOffset = dataOffset + Integer.BYTES + buffer.getInt(dataOffset);
+        return Price.builder()
+            .id(instrumentId)
+            .asOf(LocalDateTime.ofEpochSecond(buffer.getLong(offset), buffer.getInt(offset + Long.BYTES), ZoneOffset.UTC))
+            .payload(PricePayload.of(readString(payloadOffset)))
+            .build();
+    }
+
+    private boolean idEquals(int entry, byte[] id) {
+        int dataOffset = dataOffset(entry);
+        if (buffer.getInt(dataOffset) != id.length) {
+            return false;
+        }
+        for (int i = 0; i < id.length; i++) {
+            if (buffer.get(dataOffset + Integer.BYTES + i) != id[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readString(int offset) {
+        byte[] bytes = new byte[buffer.getInt(offset)];
+        buffer.duplicate().position(offset + Integer.BYTES).get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private int hashAt(int entry) {
+        return buffer.getInt(entryOffset(entry));
+    }
+
+    private int dataOffset(int entry) {
+        return (int) buffer.getLong(entryOffset(entry) + Integer.BYTES + Long.BYTES + Integer.BYTES);
+    }
+
+    private static int entryOffset(int entry) {
+        return HEADER_SIZE + entry * ENTRY_SIZE;
+    }
+
+    //String.hashCode is specified, so snapshots stay readable by other JVMs
+    private static int hash(InstrumentId instrumentId) {
+        return instrumentId.getInstrumentId().hashCode();
+    }
+}
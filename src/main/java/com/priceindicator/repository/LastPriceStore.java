@@ -0,0 +1,32 @@
+package com.priceindicator.repository;
+
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+//keeps the last price per instrument, merge and publish are called by one writer at a time
+interface LastPriceStore {
+
+    enum MergeResult {
+        //the price became the last price of its instrument
+        CHANGED,
+        //the price became the last price, but its payload equals the stored one, so only asOf is moved forward
+        SAME_PAYLOAD,
+        //the stored price is newer, so nothing is written
+        OLDER
+    }
+
+    //the index is the one the registry assigned to the instrument of the price, so the store never hashes its id
+    MergeResult merge(int index, Price price);
+    //makes everything merged since the previous publish visible to readers at once
+    void publish();
+    //called instead of publish when a merge failed, so the writer never leaves readers waiting for a broken run
+    void abort();
+    Price get(InstrumentId instrumentId);
+    //all visited prices belong to the same published version, the visitor gets null for missing prices
+    void forEach(Collection<InstrumentId> instrumentIds, BiConsumer<InstrumentId, Price> visitor);
+    //all prices belong to the same published version
+    List<Price> prices();
+}
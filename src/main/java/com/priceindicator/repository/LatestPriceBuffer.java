@@ -0,0 +1,68 @@
+package com.priceindicator.repository;
+
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+//keeps only the newest price per instrument of a run,
+//so staged memory is bounded by the number of instruments instead of the number of published prices
+public class LatestPriceBuffer implements PriceBuffer {
+
+    private static final int DRAIN_CHUNK_SIZE = 1024;
+
+    private final ConcurrentMap<InstrumentId, Price> prices = new ConcurrentHashMap<>();
+
+    @Override
+    public void add(List<Price> newPrices) {
+        newPrices.forEach(price -> prices.merge(price.getId(), price, Price::latest));
+    }
+
+    @Override
+    public int size() {
+        return prices.size();
+    }
+
+    @Override
+    public List<Price> drain() {
+        List<Price> drained = new ArrayList<>(prices.size());
+        prices.keySet().forEach(instrumentId -> {
+            Price price = prices.remove(instrumentId);
+            if (price != null) {
+                drained.add(price);
+            }
+        });
+        return drained;
+    }
+
+    @Override
+    public Iterator<List<Price>> drainChunks() {
+        Iterator<InstrumentId> instrumentIds = prices.keySet().iterator();
+        return new Iterator<>() {
+
+            @Override
+            public boolean hasNext() {
+                return instrumentIds.hasNext();
+            }
+
+            @Override
+            public List<Price> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<Price> chunk = new ArrayList<>(DRAIN_CHUNK_SIZE);
+                while (chunk.size() < DRAIN_CHUNK_SIZE && instrumentIds.hasNext()) {
+                    Price price = prices.remove(instrumentIds.next());
+                    if (price != null) {
+                        chunk.add(price);
+                    }
+                }
+                return chunk;
+            }
+        };
+    }
+}
@@ -0,0 +1,92 @@
+package com.priceindicator.repository;
+
+import com.priceindicator.domain.Price;
+import java.util.Arrays;
+
+//latest prices of a run together with their instrument indexes, so the instrument id of a price is looked up
+//in the registry once and the last price store is written by index
+//indexes are only valid for the registry they were taken from
+final class LatestPrices {
+
+    private final InstrumentIdRegistry instrumentIdRegistry;
+    private int[] indexes;
+    private Price[] prices;
+    private int size;
+
+    LatestPrices(InstrumentIdRegistry instrumentIdRegistry, int capacity) {
+        this.instrumentIdRegistry = instrumentIdRegistry;
+        indexes = new int[Math.max(capacity, 1)];
+        prices = new Price[indexes.length];
+    }
+
+    void add(int index, Price price) {
+        if (size == indexes.length) {
+            indexes = Arrays.copyOf(indexes, size * 2);
+            prices = Arrays.copyOf(prices, size * 2);
+        }
+        indexes[size] = index;
+        prices[size++] = price;
+    }
+
+    void addAll(LatestPrices other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.indexes[i], other.prices[i]);
+        }
+    }
+
+    //keeps one price per instrument, on equal asOf the price added later wins, like Price.latest
+    LatestPrices deduplicated() {
+        long[] keys = sortedKeys(indexes, size);
+        LatestPrices deduplicated = new LatestPrices(instrumentIdRegistry, size);
+        for (int start = 0; start < keys.length; ) {
+            int index = indexOf(keys[start]);
+            Price latest = prices[positionOf(keys[start])];
+            int end = start + 1;
+            for (; end < keys.length && indexOf(keys[end]) == index; end++) {
+                latest = Price.latest(latest, prices[positionOf(keys[end])]);
+            }
+            deduplicated.add(index, latest);
+            start = end;
+        }
+        return deduplicated;
+    }
+
+    InstrumentIdRegistry registry() {
+        return instrumentIdRegistry;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int indexAt(int position) {
+        return indexes[position];
+    }
+
+    Price priceAt(int position) {
+        return prices[position];
+    }
+
+    private static long[] sortedKeys(int[] indexes, int size) {
+        long[] keys = new long[size];
+        for (int position = 0; position < size; position++) {
+            keys[position] = keyOf(indexes[position], position);
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    //a key is the instrument index in the high half and the position in the low half,
+    //so sorted keys group the positions of an instrument and keep them in the order they were added
+    static long keyOf(int index, int position) {
+        return ((long) index << 32) | position;
+    }
+
+    static int indexOf(long key) {
+        return (int) (key >>> 32);
+    }
+
+    static int positionOf(long key) {
+        return (int) key;
+    }
+}
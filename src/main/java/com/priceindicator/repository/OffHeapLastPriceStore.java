@@ -0,0 +1,393 @@
+package com.priceindicator.repository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.isNull;
+
+import com.priceindicator.concurrent.ConcurrentPagedArray;
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PricePayload;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+//last prices are kept in direct buffers outside of the heap, so a huge instrument universe does not fill the old gen
+//index entries are addressed by the dense instrument index, the registry already hashes the instrument id
+//payloads are kept in slots of power of two size classes carved out of slabs and are overwritten in place when they fit
+//the writer holds the write lock from the first merge until publish, so readers wait while a run is copied in
+//the first change of an entry in a run saves the entry to an undo log, so an aborted run is rolled back
+class OffHeapLastPriceStore implements LastPriceStore {
+
+    //entry layout: asOf seconds, asOf nanos, payload length, slot capacity (0 when there is no price),
+    //undo record of the running run plus one (0 when the entry is not changed by it), slot address
+    private static final int SECONDS = 0;
+    private static final int NANOS = 8;
+    private static final int LENGTH = 12;
+    private static final int CAPACITY = 16;
+    private static final int UNDO_RECORD = 20;
+    private static final int SLOT = 24;
+    private static final int ENTRY_SIZE = 32;
+
+    //undo record layout: the entry as it was before the run with the instrument index in place of the undo record,
+    //then the offset of the saved payload in the undo payloads (-1 when the payload was not overwritten in place)
+    private static final int UNDO_INDEX = UNDO_RECORD;
+    private static final int UNDO_PAYLOAD = ENTRY_SIZE;
+    private static final int UNDO_RECORD_SIZE = ENTRY_SIZE + Long.BYTES;
+    private static final int INITIAL_UNDO_SIZE = 1 << 12;
+
+    private static final int INDEX_PAGE_BITS = 16;
+    private static final int INDEX_PAGE_MASK = (1 << INDEX_PAGE_BITS) - 1;
+
+    static final int SLAB_SIZE = 1 << 20;
+    private static final int MIN_SLOT_BITS = 4;
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(SLAB_SIZE) - MIN_SLOT_BITS + 1;
+
+    private final InstrumentIdRegistry instrumentIdRegistry;
+    private final ConcurrentPagedArray<ByteBuffer> indexPages = new ConcurrentPagedArray<>();
+    private final ConcurrentPagedArray<ByteBuffer> slabs = new ConcurrentPagedArray<>();
+    private final StampedLock lock = new StampedLock();
+
+    //only touched by the writer
+    private long writeStamp;
+    private int nextSlab;
+    private final int[] classSlabs = new int[SIZE_CLASSES];
+    private final int[] classOffsets = new int[SIZE_CLASSES];
+    private final long[][] freeSlots = new long[SIZE_CLASSES][];
+    private final int[] freeCounts = new int[SIZE_CLASSES];
+    //kept off the heap as well and reused by the next runs
+    private ByteBuffer undoRecords = ByteBuffer.allocateDirect(INITIAL_UNDO_SIZE);
+    private int undoCount;
+    private ByteBuffer undoPayloads = ByteBuffer.allocateDirect(INITIAL_UNDO_SIZE);
+    private int undoPayloadSize;
+
+    OffHeapLastPriceStore(InstrumentIdRegistry instrumentIdRegistry) {
+        this.instrumentIdRegistry = instrumentIdRegistry;
+        Arrays.fill(classSlabs, -1);
+        Arrays.fill(freeSlots, new long[0]);
+    }
+
+    @Override
+    public MergeResult merge(int index, Price price) {
+        if (writeStamp == 0) {
+            writeStamp = lock.writeLock();
+        }
+        ByteBuffer page = indexPages.computeIfAbsent(index >>> INDEX_PAGE_BITS,
+            pageIndex -> ByteBuffer.allocateDirect((INDEX_PAGE_MASK + 1) * ENTRY_SIZE));
+        int entry = (index & INDEX_PAGE_MASK) * ENTRY_SIZE;
+        LocalDateTime asOf = price.getAsOf();
+        long seconds = asOf.toEpochSecond(ZoneOffset.UTC);
+        int capacity = page.getInt(entry + CAPACITY);
+        if (capacity != 0 && isBefore(seconds, asOf.getNano(), page.getLong(entry + SECONDS), page.getInt(entry + NANOS))) {
+            return MergeResult.OLDER;
+        }
+        byte[] payload = price.getPayload().getPayload().getBytes(UTF_8);
+        int undo = saveForUndo(page, entry, index);
+        long slot = page.getLong(entry + SLOT);
+        //a republished payload is not copied again, only asOf is moved forward
+        if (capacity != 0 && page.getInt(entry + LENGTH) == payload.length && payloadEquals(slot, payload)) {
+            page.putLong(entry + SECONDS, seconds);
+            page.putInt(entry + NANOS, asOf.getNano());
+            return MergeResult.SAME_PAYLOAD;
+        }
+        if (capacity == 0 || payload.length > capacity) {
+            //the new slot is allocated first, so a failed allocation leaves the entry pointing to its own slot
+            int newCapacity = capacityOf(payload.length);
+            long newSlot = allocate(newCapacity);
+            //the slot the entry had before the run is freed on publish, so an abort can still point back to it
+            if (capacity != 0 && slot != undoRecords.getLong(undo + SLOT)) {
+                free(slot, capacity);
+            }
+            capacity = newCapacity;
+            slot = newSlot;
+            page.putLong(entry + SLOT, slot);
+            page.putInt(entry + CAPACITY, capacity);
+        } else {
+            savePayloadForUndo(undo, slot);
+        }
+        ByteBuffer slab = slabs.get(slabOf(slot)).duplicate();
+        slab.position(offsetOf(slot));
+        slab.put(payload);
+        page.putLong(entry + SECONDS, seconds);
+        page.putInt(entry + NANOS, asOf.getNano());
+        page.putInt(entry + LENGTH, payload.length);
+        return MergeResult.CHANGED;
+    }
+
+    @Override
+    public void publish() {
+        for (int record = 0; record < undoCount * UNDO_RECORD_SIZE; record += UNDO_RECORD_SIZE) {
+            int index = undoRecords.getInt(record + UNDO_INDEX);
+            ByteBuffer page = indexPages.get(index >>> INDEX_PAGE_BITS);
+            int entry = (index & INDEX_PAGE_MASK) * ENTRY_SIZE;
+            long previousSlot = undoRecords.getLong(record + SLOT);
+            int previousCapacity = undoRecords.getInt(record + CAPACITY);
+            if (previousCapacity != 0 && page.getLong(entry + SLOT) != previousSlot) {
+                free(previousSlot, previousCapacity);
+            }
+            page.putInt(entry + UNDO_RECORD, 0);
+        }
+        unlock();
+    }
+
+    //every changed entry gets back its asOf, its slot and its payload, slots taken by the run are freed
+    @Override
+    public void abort() {
+        for (int record = 0; record < undoCount * UNDO_RECORD_SIZE; record += UNDO_RECORD_SIZE) {
+            int index = undoRecords.getInt(record + UNDO_INDEX);
+            ByteBuffer page = indexPages.get(index >>> INDEX_PAGE_BITS);
+            int entry = (index & INDEX_PAGE_MASK) * ENTRY_SIZE;
+            long slot = page.getLong(entry + SLOT);
+            int capacity = page.getInt(entry + CAPACITY);
+            long previousSlot = undoRecords.getLong(record + SLOT);
+            int previousCapacity = undoRecords.getInt(record + CAPACITY);
+            if (capacity != 0 && (previousCapacity == 0 || slot != previousSlot)) {
+                free(slot, capacity);
+            }
+            long payloadOffset = undoRecords.getLong(record + UNDO_PAYLOAD);
+            if (payloadOffset != -1) {
+                ByteBuffer slab = slabs.get(slabOf(previousSlot)).duplicate();
+                slab.position(offsetOf(previousSlot));
+                slab.put(undoPayloads.duplicate()
+                    .position((int) payloadOffset)
+                    .limit((int) payloadOffset + undoRecords.getInt(record + LENGTH)));
+            }
+            page.putLong(entry + SECONDS, undoRecords.getLong(record + SECONDS));
+            page.putInt(entry + NANOS, undoRecords.getInt(record + NANOS));
+            page.putInt(entry + LENGTH, undoRecords.getInt(record + LENGTH));
+            page.putInt(entry + CAPACITY, previousCapacity);
+            page.putInt(entry + UNDO_RECORD, 0);
+            page.putLong(entry + SLOT, previousSlot);
+        }
+        unlock();
+    }
+
+    @Override
+    public Price get(InstrumentId instrumentId) {
+        if (isNull(instrumentId)) {
+            return null;
+        }
+        int index = instrumentIdRegistry.indexOf(instrumentId);
+        if (index == InstrumentIdRegistry.UNKNOWN) {
+            return null;
+        }
+        long stamp = lock.tryOptimisticRead();
+        Price price = readOptimistically(instrumentId, index);
+        if (lock.validate(stamp)) {
+            return price;
+        }
+        stamp = lock.readLock();
+        try {
+            return read(instrumentId, index);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //prices are read first and visited after, so a slow visitor never holds the writer up
+    @Override
+    public void forEach(Collection<InstrumentId> instrumentIds, BiConsumer<InstrumentId, Price> visitor) {
+        InstrumentId[] ids = instrumentIds.toArray(new InstrumentId[0]);
+        int[] indexes = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            indexes[i] = isNull(ids[i]) ? InstrumentIdRegistry.UNKNOWN : instrumentIdRegistry.indexOf(ids[i]);
+        }
+        Price[] prices = new Price[ids.length];
+        long stamp = lock.tryOptimisticRead();
+        for (int i = 0; i < ids.length; i++) {
+            prices[i] = indexes[i] == InstrumentIdRegistry.UNKNOWN ? null : readOptimistically(ids[i], indexes[i]);
+        }
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                for (int i = 0; i < ids.length; i++) {
+                    prices[i] = indexes[i] == InstrumentIdRegistry.UNKNOWN ? null : read(ids[i], indexes[i]);
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        for (int i = 0; i < ids.length; i++) {
+            visitor.accept(ids[i], prices[i]);
+        }
+    }
+
+    @Override
+    public List<Price> prices() {
+        long stamp = lock.readLock();
+        try {
+            int registered = instrumentIdRegistry.size();
+            List<Price> versionPrices = new ArrayList<>(registered);
+            for (int index = 0; index < registered; index++) {
+                Price price = read(instrumentIdRegistry.instrumentAt(index), index);
+                if (!isNull(price)) {
+                    versionPrices.add(price);
+                }
+            }
+            return versionPrices;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //an optimistic read may see an entry while it is written, whatever it decodes to is thrown away by the caller
+    //when the stamp is not valid anymore
+    private Price readOptimistically(InstrumentId instrumentId, int index) {
+        try {
+            return read(instrumentId, index);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private Price read(InstrumentId instrumentId, int index) {
+        ByteBuffer page = indexPages.get(index >>> INDEX_PAGE_BITS);
+        if (isNull(page)) {
+            return null;
+        }
+        int entry = (index & INDEX_PAGE_MASK) * ENTRY_SIZE;
+        if (page.getInt(entry + CAPACITY) == 0) {
+            return null;
+        }
+        long slot = page.getLong(entry + SLOT);
+        int length = page.getInt(entry + LENGTH);
+        ByteBuffer slab = slabs.get(slabOf(slot));
+        if (isNull(slab) || length < 0 || length > slab.capacity() - offsetOf(slot)) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        slab.duplicate().position(offsetOf(slot)).get(payload);
+        return Price.builder()
+            .id(instrumentId)
+            .asOf(LocalDateTime.ofEpochSecond(page.getLong(entry + SECONDS), page.getInt(entry + NANOS), ZoneOffset.UTC))
+            .payload(PricePayload.of(new String(payload, UTF_8)))
+            .build();
+    }
+
+    private void unlock() {
+        undoCount = 0;
+        undoPayloadSize = 0;
+        if (writeStamp != 0) {
+            lock.unlockWrite(writeStamp);
+            writeStamp = 0;
+        }
+    }
+
+    //returns the undo record of the entry, an entry is saved only by its first change in a run
+    private int saveForUndo(ByteBuffer page, int entry, int index) {
+        int saved = page.getInt(entry + UNDO_RECORD);
+        if (saved != 0) {
+            return (saved - 1) * UNDO_RECORD_SIZE;
+        }
+        int record = undoCount * UNDO_RECORD_SIZE;
+        undoRecords = ensureCapacity(undoRecords, record + UNDO_RECORD_SIZE);
+        undoRecords.putLong(record + SECONDS, page.getLong(entry + SECONDS));
+        undoRecords.putInt(record + NANOS, page.getInt(entry + NANOS));
+        undoRecords.putInt(record + LENGTH, page.getInt(entry + LENGTH));
+        undoRecords.putInt(record + CAPACITY, page.getInt(entry + CAPACITY));
+        undoRecords.putInt(record + UNDO_INDEX, index);
+        undoRecords.putLong(record + SLOT, page.getLong(entry + SLOT));
+        undoRecords.putLong(record + UNDO_PAYLOAD, -1);
+        page.putInt(entry + UNDO_RECORD, ++undoCount);
+        return record;
+    }
+
+    //only the payload the entry had before the run is saved, slots taken by the run are not needed after an abort
+    private void savePayloadForUndo(int record, long slot) {
+        if (undoRecords.getInt(record + CAPACITY) == 0 || undoRecords.getLong(record + SLOT) != slot
+            || undoRecords.getLong(record + UNDO_PAYLOAD) != -1) {
+            return;
+        }
+        int length = undoRecords.getInt(record + LENGTH);
+        undoPayloads = ensureCapacity(undoPayloads, undoPayloadSize + length);
+        undoPayloads.duplicate().position(undoPayloadSize)
+            .put(slabs.get(slabOf(slot)).duplicate().position(offsetOf(slot)).limit(offsetOf(slot) + length));
+        undoRecords.putLong(record + UNDO_PAYLOAD, undoPayloadSize);
+        undoPayloadSize += length;
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int size) {
+        if (size <= buffer.capacity()) {
+            return buffer;
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(size, buffer.capacity() * 2));
+        grown.put(buffer.duplicate().clear());
+        return grown.clear();
+    }
+
+    private boolean payloadEquals(long slot, byte[] payload) {
+        ByteBuffer slab = slabs.get(slabOf(slot));
+        int offset = offsetOf(slot);
+        for (int i = 0; i < payload.length; i++) {
+            if (slab.get(offset + i) != payload[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //payloads larger than a slab get a slab of their own
+    private long allocate(int capacity) {
+        if (capacity > SLAB_SIZE) {
+            int slab = nextSlab++;
+            slabs.set(slab, ByteBuffer.allocateDirect(capacity));
+            return slotAddress(slab, 0);
+        }
+        int sizeClass = sizeClassOf(capacity);
+        if (freeCounts[sizeClass] > 0) {
+            return freeSlots[sizeClass][--freeCounts[sizeClass]];
+        }
+        if (classSlabs[sizeClass] == -1 || classOffsets[sizeClass] == SLAB_SIZE) {
+            classSlabs[sizeClass] = nextSlab++;
+            classOffsets[sizeClass] = 0;
+            slabs.set(classSlabs[sizeClass], ByteBuffer.allocateDirect(SLAB_SIZE));
+        }
+        long slot = slotAddress(classSlabs[sizeClass], classOffsets[sizeClass]);
+        classOffsets[sizeClass] += capacity;
+        return slot;
+    }
+
+    private void free(long slot, int capacity) {
+        if (capacity > SLAB_SIZE) {
+            slabs.set(slabOf(slot), null);
+            return;
+        }
+        int sizeClass = sizeClassOf(capacity);
+        if (freeCounts[sizeClass] == freeSlots[sizeClass].length) {
+            freeSlots[sizeClass] = Arrays.copyOf(freeSlots[sizeClass], Math.max(16, freeCounts[sizeClass] * 2));
+        }
+        freeSlots[sizeClass][freeCounts[sizeClass]++] = slot;
+    }
+
+    private static int capacityOf(int length) {
+        if (length > SLAB_SIZE) {
+            return length;
+        }
+        return Math.max(1 << MIN_SLOT_BITS, Integer.highestOneBit(Math.max(length, 1) - 1) << 1);
+    }
+
+    private static int sizeClassOf(int capacity) {
+        return Integer.numberOfTrailingZeros(capacity) - MIN_SLOT_BITS;
+    }
+
+    private static long slotAddress(int slab, int offset) {
+        return ((long) slab << 32) | offset;
+    }
+
+    private static int slabOf(long slot) {
+        return (int) (slot >>> 32);
+    }
+
+    private static int offsetOf(long slot) {
+        return (int) slot;
+    }
+
+    private static boolean isBefore(long seconds, int nanos, long currentSeconds, int currentNanos) {
+        return seconds < currentSeconds || (seconds == currentSeconds && nanos < currentNanos);
+    }
+}
@@ -0,0 +1,13 @@
+package com.priceindicator.repository;
+
+import com.priceindicator.domain.Price;
+import java.util.Iterator;
+import java.util.List;
+
+public interface PriceBuffer {
+    void add(List<Price> prices);
+    int size();
+    List<Price> drain();
+    //removes staged prices chunk by chunk while the iterator is consumed, so they can be collected progressively
+    Iterator<List<Price>> drainChunks();
+}
@@ -0,0 +1,20 @@
+package com.priceindicator.repository;
+
+import com.priceindicator.domain.Price;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface PriceHistory {
+    void add(Price price);
+    //prices are expected in asOf order, which lets stores append the whole run at once
+    void addAll(List<Price> sortedPrices);
+    int size();
+    Optional<Price> floor(LocalDateTime asOf);
+    List<Price> range(LocalDateTime from, LocalDateTime to);
+    void retainLast(int count);
+    void retainFrom(LocalDateTime from);
+    //compresses payloads when the history was not read or written since the previous call,
+    //returns the bytes saved by compression while the history stays cold
+    long compressIfIdle();
+}
@@ -1,48 +1,294 @@
 package com.priceindicator.repository;
 
+import static java.util.Objects.isNull;
+
+import com.priceindicator.concurrent.ConcurrentPagedArray;
 import com.priceindicator.domain.InstrumentId;
 import com.priceindicator.domain.Price;
 import com.priceindicator.domain.PricePayload;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import lombok.RequiredArgsConstructor;
+import java.util.stream.IntStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
 
 @Repository
-@RequiredArgsConstructor
 public class PriceRepository {
 
+    public enum HistoryStore {
+        //every price is kept as an object in a time ordered skip list
+        SKIP_LIST(instrumentId -> new SkipListPriceHistory(), asOf -> { }),
+        //asOf and payload are kept in primitive columns, so much less heap is used per price,
+        //asOf is kept in epoch nanos, so only the years 1677 to 2262 fit
+        COLUMNAR(ColumnarPriceHistory::new, ColumnarPriceHistory::toNanos);
+
+        private final Function<InstrumentId, PriceHistory> historyFactory;
+        //throws IllegalArgumentException for an asOf the store can not keep
+        private final Consumer<LocalDateTime> asOfValidator;
+
+        HistoryStore(Function<InstrumentId, PriceHistory> historyFactory, Consumer<LocalDateTime> asOfValidator) {
+            this.historyFactory = historyFactory;
+            this.asOfValidator = asOfValidator;
+        }
+    }
+
+    //runs below this size are cheaper to merge on the calling thread than to fork
+    static final int PARALLEL_MERGE_THRESHOLD = 10_000;
+    private static final int PARTITIONS_PER_THREAD = 4;
+    //bounds the prices of a streamed run which are held at once in addition to the staged ones
+    static final int MERGE_GROUP_SIZE = 8 * PARALLEL_MERGE_THRESHOLD;
+
     private final LastPriceRepository lastPriceRepository;
+    private final InstrumentIdRegistry instrumentIdRegistry;
+    private final HistoryRetention retention;
+    private final HistoryStore historyStore;
+    private final boolean compressColdHistories;
+    //bytes saved by compressed histories, as of the last compression sweep
+    private volatile long compressionSavedBytes;
 
-    private final ConcurrentMap<InstrumentId, ConcurrentSkipListSet<Price>> prices = new ConcurrentHashMap<>();
+    //indexed by the dense instrument index from the registry
+    private final ConcurrentPagedArray<PriceHistory> prices = new ConcurrentPagedArray<>();
+
+    public PriceRepository(LastPriceRepository lastPriceRepository) {
+        this(lastPriceRepository, new InstrumentIdRegistry(), HistoryRetention.keepAll(), HistoryStore.SKIP_LIST);
+    }
+
+    public PriceRepository(
+        LastPriceRepository lastPriceRepository,
+        InstrumentIdRegistry instrumentIdRegistry,
+        HistoryRetention retention,
+        HistoryStore historyStore) {
+        this(lastPriceRepository, instrumentIdRegistry, retention, historyStore, false);
+    }
+
+    @Autowired
+    public PriceRepository(
+        LastPriceRepository lastPriceRepository,
+        InstrumentIdRegistry instrumentIdRegistry,
+        HistoryRetention retention,
+        @Value("${priceindicator.history.store:SKIP_LIST}") HistoryStore historyStore,
+        @Value("${priceindicator.history.compress-cold:false}") boolean compressColdHistories) {
+        this.lastPriceRepository = lastPriceRepository;
+        this.instrumentIdRegistry = instrumentIdRegistry;
+        this.retention = retention;
+        this.historyStore = historyStore;
+        this.compressColdHistories = compressColdHistories;
+    }
 
     public void addPrices(List<Price> incomingPrices) {
-        incomingPrices.forEach(price -> {
-            prices.putIfAbsent(price.getId(), new ConcurrentSkipListSet<>(Comparator.comparing(Price::getAsOf)));
-            prices.get(price.getId()).add(price);
-        });
+        //only instruments of the incoming run are released, so the cost does not depend on the history size
+        lastPriceRepository.addPrices(merge(incomingPrices));
+    }
+
+    //chunks are merged into the history while they are read, so a merged chunk can be collected before the whole
+    //run is read, last prices are still published once per run, so readers never see a partially merged run
+    //returns the number of merged prices
+    public int addPrices(Iterator<List<Price>> chunks) {
+        LatestPrices latestPrices = new LatestPrices(instrumentIdRegistry, 0);
+        List<Price> group = new ArrayList<>();
+        int merged = 0;
+        while (chunks.hasNext()) {
+            group.addAll(chunks.next());
+            //chunks are grouped, so a large run still gets groups big enough for the parallel merge
+            if (group.size() >= MERGE_GROUP_SIZE || !chunks.hasNext()) {
+                latestPrices.addAll(merge(group));
+                merged += group.size();
+                group.clear();
+            }
+        }
+        //groups are merged in run order, so the price of a later group wins an equal asOf like within a group
+        lastPriceRepository.addPrices(latestPrices.deduplicated());
+        return merged;
+    }
 
-        releasePrices();
+    //called when a batch is published, so a price the history can not keep never reaches the merge of a finishing run
+    public void validatePrices(List<Price> incomingPrices) {
+        if (retention.keepsHistory()) {
+            incomingPrices.forEach(price -> historyStore.asOfValidator.accept(price.getAsOf()));
+        }
     }
 
     public Optional<PricePayload> getLastPriceById(InstrumentId instrumentId) {
         return lastPriceRepository.getPriceById(instrumentId);
     }
 
-    private void releasePrices() {
-        Map<InstrumentId, Price> collect = prices.entrySet().stream().collect(Collectors.toMap(
-            Entry::getKey,
-            e -> e.getValue().last()
-        ));
+    //changes every time new last prices are published
+    public long getLastPriceVersion() {
+        return lastPriceRepository.version();
+    }
 
-        lastPriceRepository.addPrices(collect);
+    public Optional<PricePayload> getPriceAsOf(InstrumentId instrumentId, LocalDateTime asOf) {
+        PriceHistory history = getHistory(instrumentId);
+        if (isNull(history)) {
+            return Optional.empty();
+        }
+        return history.floor(asOf).map(Price::getPayload);
+    }
+
+    public List<Price> getPrices(InstrumentId instrumentId, LocalDateTime from, LocalDateTime to) {
+        PriceHistory history = getHistory(instrumentId);
+        if (isNull(history)) {
+            return new ArrayList<>();
+        }
+        return history.range(from, to);
+    }
+
+    public int forEachLastPrice(Collection<InstrumentId> instrumentIds, BiConsumer<InstrumentId, PricePayload> visitor) {
+        return lastPriceRepository.forEachPrice(instrumentIds, visitor);
     }
-}
 
+    //instruments which are not published anymore are never touched by the write path, so they are swept here
+    @Scheduled(fixedDelayString = "${priceindicator.history.sweep-interval:PT1M}")
+    public void evictExpiredPrices() {
+        if (retention.expiresByTime()) {
+            prices.forEach(retention::evict);
+        }
+    }
+
+    //a history becomes cold when it is neither read nor written for a whole interval,
+    //only COLUMNAR histories keep payloads as bytes, so only they are compressed
+    @Scheduled(fixedDelayString = "${priceindicator.history.compress-interval:PT5M}")
+    public void compressColdHistories() {
+        if (!compressColdHistories) {
+            return;
+        }
+        LongAdder savedBytes = new LongAdder();
+        prices.forEach(history -> savedBytes.add(history.compressIfIdle()));
+        compressionSavedBytes = savedBytes.sum();
+    }
+
+    public long compressionSavedBytes() {
+        return compressionSavedBytes;
+    }
+
+    private LatestPrices merge(List<Price> incomingPrices) {
+        Price[] runPrices = incomingPrices.toArray(new Price[0]);
+        return runPrices.length < PARALLEL_MERGE_THRESHOLD
+            ? mergeSequentially(runPrices)
+            : mergeInParallel(runPrices);
+    }
+
+    //the instrument id of every price is looked up in the registry once, the merge works with its index from then on
+    private LatestPrices mergeSequentially(Price[] runPrices) {
+        long[] keys = new long[runPrices.length];
+        for (int position = 0; position < runPrices.length; position++) {
+            keys[position] = LatestPrices.keyOf(instrumentIdRegistry.register(runPrices[position].getId()), position);
+        }
+        Arrays.sort(keys);
+        return mergeInstruments(runPrices, keys);
+    }
+
+    //every instrument belongs to exactly one partition, so partitions are merged without contending on a history
+    private LatestPrices mergeInParallel(Price[] runPrices) {
+        int partitions = ForkJoinPool.getCommonPoolParallelism() * PARTITIONS_PER_THREAD;
+        int chunkSize = (runPrices.length + partitions - 1) / partitions;
+
+        //first the run is cut into chunks and the keys of each chunk are split by instrument index
+        long[][][] chunkPartitions = new long[partitions][][];
+        ForkJoinTask.invokeAll(IntStream.range(0, partitions)
+            .mapToObj(chunk -> ForkJoinTask.adapt(() -> chunkPartitions[chunk] = partition(runPrices,
+                Math.min(chunk * chunkSize, runPrices.length), Math.min((chunk + 1) * chunkSize, runPrices.length),
+                partitions)))
+            .collect(Collectors.toList()));
+
+        //then each partition is sorted by instrument and merged into the histories in bulk
+        LatestPrices[] partitionLatestPrices = new LatestPrices[partitions];
+        ForkJoinTask.invokeAll(IntStream.range(0, partitions)
+            .mapToObj(partition -> ForkJoinTask.adapt(() -> partitionLatestPrices[partition] =
+                mergePartition(runPrices, chunkPartitions, partition)))
+            .collect(Collectors.toList()));
+
+        LatestPrices latestPrices = new LatestPrices(instrumentIdRegistry,
+            Arrays.stream(partitionLatestPrices).mapToInt(LatestPrices::size).sum());
+        Arrays.stream(partitionLatestPrices).forEach(latestPrices::addAll);
+        return latestPrices;
+    }
+
+    private long[][] partition(Price[] runPrices, int from, int to, int partitions) {
+        long[] keys = new long[to - from];
+        int[] sizes = new int[partitions];
+        for (int position = from; position < to; position++) {
+            int index = instrumentIdRegistry.register(runPrices[position].getId());
+            keys[position - from] = LatestPrices.keyOf(index, position);
+            sizes[index % partitions]++;
+        }
+        long[][] partitioned = new long[partitions][];
+        for (int partition = 0; partition < partitions; partition++) {
+            partitioned[partition] = new long[sizes[partition]];
+        }
+        Arrays.fill(sizes, 0);
+        for (long key : keys) {
+            int partition = LatestPrices.indexOf(key) % partitions;
+            partitioned[partition][sizes[partition]++] = key;
+        }
+        return partitioned;
+    }
+
+    private LatestPrices mergePartition(Price[] runPrices, long[][][] chunkPartitions, int partition) {
+        long[] keys = new long[Arrays.stream(chunkPartitions).mapToInt(chunk -> chunk[partition].length).sum()];
+        int offset = 0;
+        for (long[][] chunk : chunkPartitions) {
+            System.arraycopy(chunk[partition], 0, keys, offset, chunk[partition].length);
+            offset += chunk[partition].length;
+        }
+        Arrays.sort(keys);
+        return mergeInstruments(runPrices, keys);
+    }
+
+    //keys hold the run position, so sorted keys give the prices of an instrument together in publishing order
+    private LatestPrices mergeInstruments(Price[] runPrices, long[] keys) {
+        LatestPrices latestPrices = new LatestPrices(instrumentIdRegistry, keys.length);
+        List<Price> instrumentPrices = new ArrayList<>();
+        for (int start = 0; start < keys.length; ) {
+            int index = LatestPrices.indexOf(keys[start]);
+            Price latest = runPrices[LatestPrices.positionOf(keys[start])];
+            instrumentPrices.clear();
+            int end = start;
+            for (; end < keys.length && LatestPrices.indexOf(keys[end]) == index; end++) {
+                Price price = runPrices[LatestPrices.positionOf(keys[end])];
+                latest = Price.latest(latest, price);
+                instrumentPrices.add(price);
+            }
+            latestPrices.add(index, latest);
+
+            if (retention.keepsHistory()) {
+                //the sort is stable, so the first published price still wins for an equal asOf
+                instrumentPrices.sort(Comparator.comparing(Price::getAsOf));
+                PriceHistory history = getOrCreateHistory(index);
+                history.addAll(instrumentPrices);
+                //eviction is done per touched instrument, so it never needs a full scan on the write path
+                retention.evict(history);
+            }
+            start = end;
+        }
+        return latestPrices;
+    }
+
+    private PriceHistory getHistory(InstrumentId instrumentId) {
+        if (isNull(instrumentId)) {
+            return null;
+        }
+        int index = instrumentIdRegistry.indexOf(instrumentId);
+        return index == InstrumentIdRegistry.UNKNOWN ? null : prices.get(index);
+    }
+
+    //a new history gets the instrument id kept by the registry, so every structure shares one instance per instrument
+    private PriceHistory getOrCreateHistory(int index) {
+        return prices.computeIfAbsent(index, i -> historyStore.historyFactory.apply(instrumentIdRegistry.instrumentAt(i)));
+    }
+}
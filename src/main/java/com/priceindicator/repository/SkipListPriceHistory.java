@@ -0,0 +1,75 @@
+package com.priceindicator.repository;
+
+import com.priceindicator.domain.Price;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SkipListPriceHistory implements PriceHistory {
+
+    private final ConcurrentSkipListSet<Price> prices = new ConcurrentSkipListSet<>(Comparator.comparing(Price::getAsOf));
+    //ConcurrentSkipListSet.size() walks the whole set, so the size is tracked separately
+    private final AtomicInteger size = new AtomicInteger();
+
+    @Override
+    public void add(Price price) {
+        if (prices.add(price)) {
+            size.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void addAll(List<Price> sortedPrices) {
+        sortedPrices.forEach(this::add);
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public Optional<Price> floor(LocalDateTime asOf) {
+        return Optional.ofNullable(prices.floor(bound(asOf)));
+    }
+
+    @Override
+    public List<Price> range(LocalDateTime from, LocalDateTime to) {
+        return new ArrayList<>(prices.subSet(bound(from), true, bound(to), true));
+    }
+
+    @Override
+    public void retainLast(int count) {
+        int current;
+        while ((current = size.get()) > count) {
+            //the slot is reserved first, so concurrent evictions never remove more than needed
+            if (size.compareAndSet(current, current - 1)) {
+                prices.pollFirst();
+            }
+        }
+    }
+
+    @Override
+    public void retainFrom(LocalDateTime from) {
+        prices.headSet(bound(from)).forEach(price -> {
+            if (prices.remove(price)) {
+                size.decrementAndGet();
+            }
+        });
+    }
+
+    //prices are kept as objects, so there is nothing to compress
+    @Override
+    public long compressIfIdle() {
+        return 0;
+    }
+
+    //prices are ordered by asOf only, so a price with just asOf set can be used to navigate the set
+    private static Price bound(LocalDateTime asOf) {
+        return Price.builder().asOf(asOf).build();
+    }
+}
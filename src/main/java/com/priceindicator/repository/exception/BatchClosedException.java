@@ -0,0 +1,16 @@
+package com.priceindicator.repository.exception;
+
+import com.priceindicator.domain.BatchRunStatus.Status;
+
+public class BatchClosedException extends BatchNotFoundException {
+
+    private final Status status;
+
+    public BatchClosedException(Status status) {
+        this.status = status;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+}
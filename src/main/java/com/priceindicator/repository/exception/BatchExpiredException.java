@@ -0,0 +1,10 @@
+package com.priceindicator.repository.exception;
+
+import com.priceindicator.domain.BatchRunStatus.Status;
+
+public class BatchExpiredException extends BatchClosedException {
+
+    public BatchExpiredException() {
+        super(Status.EXPIRED);
+    }
+}
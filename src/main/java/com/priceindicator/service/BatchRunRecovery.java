@@ -0,0 +1,64 @@
+package com.priceindicator.service;
+
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PriceBatch;
+import com.priceindicator.repository.BatchRepository;
+import com.priceindicator.repository.PriceRepository;
+import com.priceindicator.repository.exception.BatchNotFoundException;
+import com.priceindicator.wal.WalRecord;
+import com.priceindicator.wal.WriteAheadLog;
+import java.util.Iterator;
+import java.util.List;
+import javax.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+//rebuilds open batch runs and finished prices from the write-ahead log before anything is published
+//expired runs are logged as canceled, recovered open runs start a new ttl
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BatchRunRecovery {
+
+    private final WriteAheadLog writeAheadLog;
+    private final BatchRepository batchRepository;
+    private final PriceRepository priceRepository;
+
+    @PostConstruct
+    public void recover() {
+        writeAheadLog.recover(this::apply);
+    }
+
+    void apply(WalRecord record) {
+        switch (record.getType()) {
+            case ANNOUNCE:
+                batchRepository.announceBatchRun(record.getBatchRunId());
+                break;
+            case PUBLISH:
+                try {
+                    batchRepository.addPrices(PriceBatch.builder()
+                        .batchRunId(record.getBatchRunId())
+                        .prices(record.getPrices())
+                        .build());
+                } catch (BatchNotFoundException e) {
+                    //only accepted batches are logged, so this means the log is missing the announce
+                    log.warn("Logged batch of unknown batch run {} is skipped", record.getBatchRunId());
+                }
+                break;
+            case FINISH:
+                Iterator<List<Price>> chunks = batchRepository.releaseBatchRunChunks(record.getBatchRunId());
+                try {
+                    priceRepository.addPrices(chunks);
+                } finally {
+                    batchRepository.batchRunPublished(record.getBatchRunId(), chunks);
+                }
+                break;
+            case CANCEL:
+                batchRepository.removeBatchRun(record.getBatchRunId());
+                break;
+            default:
+                throw new IllegalStateException("Unknown write-ahead log record " + record.getType());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.priceindicator.service;
+
+//count-min sketch of 4 bit counters which estimates how often a key was seen recently,
+//all counters are halved after a sample of increments, so old popularity fades out
+//counters are updated without synchronization, a lost increment only makes the estimate slightly lower
+class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    //every long keeps 16 counters
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int increments;
+
+    FrequencySketch(int capacity) {
+        int length = Math.max(1, Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1);
+        table = new long[length];
+        tableMask = length - 1;
+        sampleSize = 10 * length;
+    }
+
+    int frequency(int hash) {
+        int spread = spread(hash);
+        int start = (spread & 3) << 2;
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < SEEDS.length; row++) {
+            frequency = Math.min(frequency, (int) ((table[indexOf(spread, row)] >>> ((start + row) << 2)) & 0xF));
+        }
+        return frequency;
+    }
+
+    //saturated counters are not written, so keys which are hot already only read the table
+    void increment(int hash) {
+        int spread = spread(hash);
+        int start = (spread & 3) << 2;
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            int index = indexOf(spread, row);
+            int offset = (start + row) << 2;
+            if (((table[index] >>> offset) & 0xF) < MAX_COUNT) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++increments >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int index = 0; index < table.length; index++) {
+            table[index] = (table[index] >>> 1) & RESET_MASK;
+        }
+        increments = sampleSize / 2;
+    }
+
+    private int indexOf(int spread, int row) {
+        long hash = (spread + SEEDS[row]) * SEEDS[row];
+        hash += hash >>> 32;
+        return (int) hash & tableMask;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
@@ -0,0 +1,129 @@
+package com.priceindicator.service;
+
+import com.priceindicator.concurrent.MpscRingBuffer;
+import com.priceindicator.domain.BatchRunId;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+//publishers only claim a slot in the ring buffer, a single worker thread applies the tasks in publishing order
+//the worker is started by the first offer and parks while the buffer is empty, so it costs nothing when unused
+@Component
+@Slf4j
+public class IngestionPipeline {
+
+    private static final long DRAIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final MpscRingBuffer<Runnable> tasks;
+    //offered and applied tasks per batch run, so finishing a run waits only for the tasks of that run,
+    //an entry is dropped by forget once its run is closed
+    private final ConcurrentMap<BatchRunId, RunProgress> runs = new ConcurrentHashMap<>();
+    private final Thread worker;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean running = true;
+    //set by the worker before it parks, so publishers unpark it only when it may be asleep
+    private volatile boolean idle;
+
+    public IngestionPipeline(@Value("${priceindicator.publish.ingestion-buffer-size:1024}") int bufferSize) {
+        tasks = new MpscRingBuffer<>(bufferSize);
+        worker = new Thread(this::process, "price-ingestion");
+        worker.setDaemon(true);
+    }
+
+    //returns false when the buffer is full, so the caller can apply backpressure
+    public boolean offer(BatchRunId batchRunId, Runnable task) {
+        if (!running) {
+            return false;
+        }
+        if (!started.get() && started.compareAndSet(false, true)) {
+            worker.start();
+        }
+        RunProgress progress = runs.computeIfAbsent(batchRunId, id -> new RunProgress());
+        progress.offered.incrementAndGet();
+        if (!tasks.offer(() -> {
+            try {
+                task.run();
+            } finally {
+                progress.applied.incrementAndGet();
+            }
+        })) {
+            //a rejected task counts as applied, so a finish never waits for it
+            progress.applied.incrementAndGet();
+            return false;
+        }
+        if (idle) {
+            LockSupport.unpark(worker);
+        }
+        return true;
+    }
+
+    //waits until every task of the run offered before this call is applied
+    public void awaitDrained(BatchRunId batchRunId) {
+        RunProgress progress = runs.get(batchRunId);
+        if (progress == null) {
+            return;
+        }
+        long target = progress.offered.get();
+        while (progress.applied.get() < target) {
+            if (!worker.isAlive()) {
+                throw new IllegalStateException("Ingestion worker is stopped");
+            }
+            LockSupport.parkNanos(DRAIN_PARK_NANOS);
+        }
+    }
+
+    //drops the progress of a closed run, its tasks still in the buffer are applied and rejected by the closed run
+    public void forget(BatchRunId batchRunId) {
+        runs.remove(batchRunId);
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        if (started.get()) {
+            LockSupport.unpark(worker);
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    //an error stops the worker, offers are rejected from then on and waiting finishes fail instead of hanging
+    private void process() {
+        try {
+            while (running || tasks.consumerPosition() < tasks.producerPosition()) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    idle = true;
+                    //a task offered before the flag was seen is picked up by this second poll
+                    task = tasks.poll();
+                    if (task == null) {
+                        if (running) {
+                            LockSupport.park(this);
+                        }
+                        idle = false;
+                        continue;
+                    }
+                    idle = false;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("Ingestion task failed", e);
+                }
+            }
+        } finally {
+            running = false;
+        }
+    }
+
+    private static final class RunProgress {
+        private final AtomicLong offered = new AtomicLong();
+        private final AtomicLong applied = new AtomicLong();
+    }
+}
@@ -0,0 +1,105 @@
+package com.priceindicator.service;
+
+import com.priceindicator.repository.HistoryRetention;
+import com.priceindicator.repository.LastPriceRepository;
+import com.priceindicator.repository.LastPriceSnapshot;
+import com.priceindicator.wal.WriteAheadLog;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+//periodically writes last prices to a snapshot file and maps the latest snapshot on startup
+//without history every written snapshot is a checkpoint of the write-ahead log, segments it covers are deleted,
+//price history is rebuilt only from the log, so while history is kept the log is never truncated
+@Component
+@Slf4j
+public class LastPriceSnapshotter {
+
+    private final LastPriceRepository lastPriceRepository;
+    private final WriteAheadLog writeAheadLog;
+    private final HistoryRetention retention;
+    private final boolean enabled;
+    private final Path file;
+
+    @Autowired
+    public LastPriceSnapshotter(
+        LastPriceRepository lastPriceRepository,
+        WriteAheadLog writeAheadLog,
+        HistoryRetention retention,
+        @Value("${priceindicator.snapshot.enabled:false}") boolean enabled,
+        @Value("${priceindicator.snapshot.file:snapshot/last-prices.snapshot}") String file) {
+        this(lastPriceRepository, writeAheadLog, retention, enabled, Path.of(file));
+    }
+
+    public LastPriceSnapshotter(LastPriceRepository lastPriceRepository, boolean enabled, Path file) {
+        this(lastPriceRepository, new WriteAheadLog(), HistoryRetention.keepAll(), enabled, file);
+    }
+
+    public LastPriceSnapshotter(
+        LastPriceRepository lastPriceRepository,
+        WriteAheadLog writeAheadLog,
+        HistoryRetention retention,
+        boolean enabled,
+        Path file) {
+        this.lastPriceRepository = lastPriceRepository;
+        this.writeAheadLog = writeAheadLog;
+        this.retention = retention;
+        this.enabled = enabled;
+        this.file = file;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled || !Files.exists(file)) {
+            return;
+        }
+        try {
+            LastPriceSnapshot snapshot = LastPriceSnapshot.map(file);
+            lastPriceRepository.loadSnapshot(snapshot)
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        log.error("Last price snapshot can not be copied to the heap", e);
+                    } else {
+                        log.info("{} last prices loaded from snapshot", snapshot.size());
+                    }
+                });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Last price snapshot can not be loaded", e);
+        }
+    }
+
+    //also written on shutdown, so a planned restart does not lose anything since the last snapshot
+    @Scheduled(fixedDelayString = "${priceindicator.snapshot.interval:PT5M}")
+    @PreDestroy
+    public void write() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            if (retention.keepsHistory()) {
+                lastPriceRepository.writeSnapshot(file);
+                return;
+            }
+            //the checkpoint is taken first, so every run published before it is in the snapshot
+            long checkpoint = writeAheadLog.checkpoint();
+            lastPriceRepository.writeSnapshot(file);
+            int deleted = writeAheadLog.truncate(checkpoint);
+            if (deleted > 0) {
+                log.info("{} write-ahead log segments covered by the snapshot are deleted", deleted);
+            }
+        } catch (IOException e) {
+            log.error("Last price snapshot can not be written", e);
+        } catch (IllegalStateException e) {
+            log.info("Last price snapshot is skipped: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.priceindicator.service;
+
+import static java.util.Objects.isNull;
+
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.PricePayload;
+import com.priceindicator.repository.PriceRepository;
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+//small direct mapped cache of last prices of hot instruments in front of the repository
+//an entry is valid only for the last price version it was read from, so a finished run invalidates the whole cache
+//at once and a cached price is never older than the repository one
+//an instrument replaces a valid cached one only when the frequency sketch has seen it more often,
+//so a scan over cold instruments does not evict the hot ones
+@Component
+public class NearPriceCache {
+
+    public static final int DEFAULT_SIZE = 4096;
+
+    private final PriceRepository priceRepository;
+    //entries are immutable, so a racy read sees either a whole entry or an older one
+    private final Entry[] entries;
+    private final int mask;
+    private final FrequencySketch sketch;
+
+    public NearPriceCache(PriceRepository priceRepository) {
+        this(priceRepository, DEFAULT_SIZE);
+    }
+
+    //size 0 disables the cache
+    @Autowired
+    public NearPriceCache(
+        PriceRepository priceRepository,
+        @Value("${priceindicator.consume.near-cache-size:4096}") int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Near cache size must not be negative");
+        }
+        this.priceRepository = priceRepository;
+        int capacity = size == 0 ? 0 : Math.max(1, Integer.highestOneBit(size - 1) << 1);
+        this.entries = new Entry[capacity];
+        this.mask = capacity - 1;
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    public Optional<PricePayload> getLastPriceById(InstrumentId instrumentId) {
+        if (entries.length == 0 || isNull(instrumentId)) {
+            return priceRepository.getLastPriceById(instrumentId);
+        }
+        //read before the price, so a run finished in between makes the new entry stale rather than wrong
+        long version = priceRepository.getLastPriceVersion();
+        int hash = instrumentId.hashCode();
+        int slot = spread(hash) & mask;
+        Entry entry = entries[slot];
+        sketch.increment(hash);
+        if (!isNull(entry) && entry.version == version && entry.instrumentId.equals(instrumentId)) {
+            return entry.lastPrice;
+        }
+        Optional<PricePayload> lastPrice = priceRepository.getLastPriceById(instrumentId);
+        if (isNull(entry) || entry.version != version
+            || sketch.frequency(hash) > sketch.frequency(entry.instrumentId.hashCode())) {
+            entries[slot] = new Entry(instrumentId, version, lastPrice);
+        }
+        return lastPrice;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    @RequiredArgsConstructor
+    private static final class Entry {
+        private final InstrumentId instrumentId;
+        private final long version;
+        private final Optional<PricePayload> lastPrice;
+    }
+}
@@ -1,9 +1,17 @@
 package com.priceindicator.service;
 
 import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
 import com.priceindicator.domain.PricePayload;
 import com.priceindicator.repository.PriceRepository;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -12,9 +20,52 @@ import org.springframework.stereotype.Service;
 public class PriceConsumeService implements PriceConsumer {
 
     private final PriceRepository priceRepository;
+    private final PriceMetrics priceMetrics;
+    private final PriceSubscriptions priceSubscriptions;
+    private final NearPriceCache nearPriceCache;
 
     @Override
     public Optional<PricePayload> getLastPriceById(InstrumentId instrumentId) {
-        return priceRepository.getLastPriceById(instrumentId);
+        Optional<PricePayload> lastPrice = nearPriceCache.getLastPriceById(instrumentId);
+        priceMetrics.recordLastPrice(lastPrice.isPresent());
+        return lastPrice;
+    }
+
+    @Override
+    public Optional<PricePayload> getPriceAsOf(InstrumentId instrumentId, LocalDateTime asOf) {
+        return priceRepository.getPriceAsOf(instrumentId, asOf);
+    }
+
+    @Override
+    public List<Price> getPrices(InstrumentId instrumentId, LocalDateTime from, LocalDateTime to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("Incorrect time range");
+        }
+        return priceRepository.getPrices(instrumentId, from, to);
+    }
+
+    @Override
+    public Map<InstrumentId, PricePayload> getLastPrices(Collection<InstrumentId> instrumentIds) {
+        //sized upfront, so the map is never rehashed while it is filled
+        Map<InstrumentId, PricePayload> lastPrices = new HashMap<>((int) (instrumentIds.size() / 0.75f) + 1);
+        int found = priceRepository.forEachLastPrice(instrumentIds, lastPrices::put);
+        priceMetrics.recordLastPrices(instrumentIds.size(), found);
+        return lastPrices;
+    }
+
+    @Override
+    public void forEachLastPrice(Collection<InstrumentId> instrumentIds, BiConsumer<InstrumentId, PricePayload> visitor) {
+        int found = priceRepository.forEachLastPrice(instrumentIds, visitor);
+        priceMetrics.recordLastPrices(instrumentIds.size(), found);
+    }
+
+    @Override
+    public PriceSubscription subscribe(Collection<InstrumentId> instrumentIds, Consumer<Price> listener) {
+        return priceSubscriptions.subscribe(instrumentIds, listener);
+    }
+
+    @Override
+    public PriceSubscription subscribeAll(Consumer<Price> listener) {
+        return priceSubscriptions.subscribeAll(listener);
     }
 }
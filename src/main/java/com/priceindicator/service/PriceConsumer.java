@@ -1,9 +1,24 @@
 package com.priceindicator.service;
 
 import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
 import com.priceindicator.domain.PricePayload;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public interface PriceConsumer {
     Optional<PricePayload> getLastPriceById(InstrumentId instrumentId);
+    Optional<PricePayload> getPriceAsOf(InstrumentId instrumentId, LocalDateTime asOf);
+    List<Price> getPrices(InstrumentId instrumentId, LocalDateTime from, LocalDateTime to);
+    Map<InstrumentId, PricePayload> getLastPrices(Collection<InstrumentId> instrumentIds);
+    void forEachLastPrice(Collection<InstrumentId> instrumentIds, BiConsumer<InstrumentId, PricePayload> visitor);
+    //the listener gets the prices which became last prices when a batch run finished,
+    //a slow listener only gets the latest of several updates of an instrument
+    PriceSubscription subscribe(Collection<InstrumentId> instrumentIds, Consumer<Price> listener);
+    PriceSubscription subscribeAll(Consumer<Price> listener);
 }
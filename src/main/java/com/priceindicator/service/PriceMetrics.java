@@ -0,0 +1,110 @@
+package com.priceindicator.service;
+
+import com.priceindicator.repository.BatchRepository;
+import com.priceindicator.repository.LastPriceRepository;
+import com.priceindicator.repository.PriceRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+//meters are registered once, so recording on the hot paths is an increment without any lookup or allocation
+@Component
+public class PriceMetrics {
+
+    private final Timer publishLatency;
+    private final Timer finishRelease;
+    private final Timer finishMerge;
+    private final DistributionSummary pricesPerRun;
+    private final Counter lastPriceHits;
+    private final Counter lastPriceMisses;
+
+    public PriceMetrics() {
+        this(new SimpleMeterRegistry());
+    }
+
+    public PriceMetrics(MeterRegistry registry) {
+        publishLatency = Timer.builder("priceindicator.publish.latency")
+            .description("Time to stage one published batch")
+            .publishPercentileHistogram()
+            .register(registry);
+        finishRelease = Timer.builder("priceindicator.finish.release")
+            .description("Time to seal a finishing batch run and wait for its in-flight publishes")
+            .publishPercentileHistogram()
+            .register(registry);
+        finishMerge = Timer.builder("priceindicator.finish.merge")
+            .description("Time to stream a released batch run into the price repositories")
+            .publishPercentileHistogram()
+            .register(registry);
+        pricesPerRun = DistributionSummary.builder("priceindicator.finish.prices")
+            .description("Number of prices in a finished batch run")
+            .baseUnit("prices")
+            .register(registry);
+        lastPriceHits = Counter.builder("priceindicator.consume.last.price")
+            .tag("result", "hit")
+            .register(registry);
+        lastPriceMisses = Counter.builder("priceindicator.consume.last.price")
+            .tag("result", "miss")
+            .register(registry);
+    }
+
+    @Autowired
+    public PriceMetrics(MeterRegistry registry, BatchRepository batchRepository, LastPriceRepository lastPriceRepository,
+        PriceRepository priceRepository) {
+        this(registry);
+        Gauge.builder("priceindicator.batch.runs.active", batchRepository, BatchRepository::activeRunCount)
+            .description("Number of batch runs open for publishing")
+            .register(registry);
+        Gauge.builder("priceindicator.batch.staged.bytes", batchRepository, BatchRepository::stagedBytes)
+            .description("Estimated bytes staged by open batch runs, UTF-16 chars of instrument ids and payloads without object overhead")
+            .baseUnit("bytes")
+            .register(registry);
+        Gauge.builder("priceindicator.batch.staged.bytes.per.run", batchRepository,
+                repository -> repository.stagedBytes() / (double) Math.max(1, repository.activeRunCount()))
+            .description("Estimated average bytes staged by one open batch run")
+            .baseUnit("bytes")
+            .register(registry);
+        //the dedup hit rate is the deduplicated rate divided by the rate of both
+        FunctionCounter.builder("priceindicator.last.price.writes", lastPriceRepository, LastPriceRepository::writtenPrices)
+            .description("Prices which became last prices of their instruments, deduplicated ones keep the stored payload, "
+                + "but a newer asOf is still written")
+            .tag("payload", "written")
+            .register(registry);
+        FunctionCounter.builder("priceindicator.last.price.writes", lastPriceRepository,
+                LastPriceRepository::deduplicatedPrices)
+            .description("Prices which became last prices of their instruments, deduplicated ones keep the stored payload, "
+                + "but a newer asOf is still written")
+            .tag("payload", "deduplicated")
+            .register(registry);
+        Gauge.builder("priceindicator.history.compression.saved.bytes", priceRepository,
+                PriceRepository::compressionSavedBytes)
+            .description("Heap bytes saved by compressed cold histories as of the last compression sweep")
+            .baseUnit("bytes")
+            .register(registry);
+    }
+
+    public void recordPublish(long startNanos) {
+        publishLatency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordFinish(long startNanos, long releasedNanos, long mergedNanos, int prices) {
+        finishRelease.record(releasedNanos - startNanos, TimeUnit.NANOSECONDS);
+        finishMerge.record(mergedNanos - releasedNanos, TimeUnit.NANOSECONDS);
+        pricesPerRun.record(prices);
+    }
+
+    public void recordLastPrices(int requested, int found) {
+        lastPriceHits.increment(found);
+        lastPriceMisses.increment(requested - found);
+    }
+
+    public void recordLastPrice(boolean found) {
+        (found ? lastPriceHits : lastPriceMisses).increment();
+    }
+}
@@ -1,5 +1,6 @@
 package com.priceindicator.service;
 
+import com.priceindicator.codec.PriceBatchCodec;
 import com.priceindicator.domain.BatchRunId;
 import com.priceindicator.domain.BatchRunStatus;
 import com.priceindicator.domain.BatchRunStatus.Status;
@@ -7,20 +8,37 @@ import com.priceindicator.domain.Price;
 import com.priceindicator.domain.PriceBatch;
 import com.priceindicator.repository.BatchRepository;
 import com.priceindicator.repository.PriceRepository;
+import com.priceindicator.repository.exception.BatchClosedException;
 import com.priceindicator.repository.exception.BatchNotFoundException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
-import lombok.RequiredArgsConstructor;
+import java.util.concurrent.CompletableFuture;
 import org.springframework.stereotype.Service;
 
 @Service
-@RequiredArgsConstructor
 public class PricePublishService implements PricePublisher {
 
     public static final int MAX_BATCH_SIZE = 1000;
     public static final int MIN_BATCH_SIZE = 1;
     private final BatchRepository batchRepository;
     private final PriceRepository priceRepository;
+    private final IngestionPipeline ingestionPipeline;
+    private final PriceMetrics priceMetrics;
+
+    public PricePublishService(
+        BatchRepository batchRepository,
+        PriceRepository priceRepository,
+        IngestionPipeline ingestionPipeline,
+        PriceMetrics priceMetrics) {
+        this.batchRepository = batchRepository;
+        this.priceRepository = priceRepository;
+        this.ingestionPipeline = ingestionPipeline;
+        this.priceMetrics = priceMetrics;
+        //a run which is closed without being finished is never waited for, so its progress is dropped here
+        batchRepository.addCloseListener(ingestionPipeline::forget);
+    }
 
     @Override
     public BatchRunStatus announceBatchRun() {
@@ -32,25 +50,65 @@ public class PricePublishService implements PricePublisher {
 
     @Override
     public BatchRunStatus publishBatch(PriceBatch batch) {
-        //we could reject batches which are not 1000 items,
-        //but I think it is very unlikely in a real world that all batches will be exactly 1000
-        //so maximum was put to 1000 and minimum 1
-        if (batch.getPrices().size() < MIN_BATCH_SIZE || batch.getPrices().size() > MAX_BATCH_SIZE) {
-            throw new IllegalArgumentException("Incorrect batch size");
+        validateBatch(batch);
+        return storeBatch(batch);
+    }
+
+    //batches coming from other processes are encoded by PriceBatchCodec
+    @Override
+    public BatchRunStatus publishBatch(ByteBuffer encodedBatch) {
+        return publishBatch(PriceBatchCodec.decode(encodedBatch));
+    }
+
+    @Override
+    public CompletableFuture<BatchRunStatus> publishBatchAsync(PriceBatch batch) {
+        validateBatch(batch);
+        //a batch of a run which is not open is rejected by the run anyway, so it is not queued at all
+        if (!batchRepository.isOpen(batch.getBatchRunId())) {
+            return CompletableFuture.completedFuture(storeBatch(batch));
         }
-        Status status = Status.IN_PROGRESS;
-        try {
-            batchRepository.addPrices(batch);
-        } catch (BatchNotFoundException e) {
-            status = Status.ERROR;
+        CompletableFuture<BatchRunStatus> result = new CompletableFuture<>();
+        boolean accepted = ingestionPipeline.offer(batch.getBatchRunId(), () -> {
+            try {
+                result.complete(storeBatch(batch));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        //the run may be closed while the batch is offered, after its progress was dropped by the close listener
+        if (!batchRepository.isOpen(batch.getBatchRunId())) {
+            ingestionPipeline.forget(batch.getBatchRunId());
         }
-        return new BatchRunStatus(batch.getBatchRunId(), status);
+        if (!accepted) {
+            return CompletableFuture.completedFuture(new BatchRunStatus(batch.getBatchRunId(), Status.REJECTED));
+        }
+        return result;
     }
 
     @Override
     public BatchRunStatus finishBatchRun(BatchRunId batchRunId) {
-        List<Price> prices = batchRepository.releaseBatchRun(batchRunId);
-        priceRepository.addPrices(prices);
+        //batches published asynchronously before finishing should become a part of the run
+        long startNanos = System.nanoTime();
+        ingestionPipeline.awaitDrained(batchRunId);
+        //staged chunks are streamed into the merge, so the run is never copied as a whole
+        Iterator<List<Price>> chunks;
+        try {
+            chunks = batchRepository.finishBatchRun(batchRunId);
+        } catch (BatchClosedException e) {
+            //the run is finished by another caller, or it was canceled or expired before
+            return new BatchRunStatus(batchRunId, e.getStatus());
+        } catch (BatchNotFoundException e) {
+            return new BatchRunStatus(batchRunId, Status.ERROR);
+        }
+        long releasedNanos = System.nanoTime();
+        int prices;
+        try {
+            prices = priceRepository.addPrices(chunks);
+        } finally {
+            //a failed merge is aborted and never retried, so its run must not pin the write-ahead log either
+            batchRepository.batchRunPublished(batchRunId, chunks);
+        }
+        priceMetrics.recordFinish(startNanos, releasedNanos, System.nanoTime(), prices);
         return new BatchRunStatus(batchRunId, Status.FINISHED);
     }
 
@@ -59,4 +117,29 @@ public class PricePublishService implements PricePublisher {
         batchRepository.removeBatchRun(batchRunId);
         return new BatchRunStatus(batchRunId, Status.CANCELED);
     }
+
+    private void validateBatch(PriceBatch batch) {
+        //we could reject batches which are not 1000 items,
+        //but I think it is very unlikely in a real world that all batches will be exactly 1000
+        //so maximum was put to 1000 and minimum 1
+        if (batch.getPrices().size() < MIN_BATCH_SIZE || batch.getPrices().size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Incorrect batch size");
+        }
+        //a price rejected only when the run is finished would fail the finish after part of the run is merged
+        priceRepository.validatePrices(batch.getPrices());
+    }
+
+    private BatchRunStatus storeBatch(PriceBatch batch) {
+        long startNanos = System.nanoTime();
+        Status status = Status.IN_PROGRESS;
+        try {
+            batchRepository.addPrices(batch);
+        } catch (BatchClosedException e) {
+            status = e.getStatus();
+        } catch (BatchNotFoundException e) {
+            status = Status.ERROR;
+        }
+        priceMetrics.recordPublish(startNanos);
+        return new BatchRunStatus(batch.getBatchRunId(), status);
+    }
 }
@@ -3,10 +3,14 @@ package com.priceindicator.service;
 import com.priceindicator.domain.BatchRunId;
 import com.priceindicator.domain.BatchRunStatus;
 import com.priceindicator.domain.PriceBatch;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 
 public interface PricePublisher {
     BatchRunStatus announceBatchRun();
     BatchRunStatus publishBatch(PriceBatch batch);
+    BatchRunStatus publishBatch(ByteBuffer encodedBatch);
+    CompletableFuture<BatchRunStatus> publishBatchAsync(PriceBatch batch);
     BatchRunStatus finishBatchRun(BatchRunId batchRunId);
     BatchRunStatus cancelBatchRun(BatchRunId batchRunId);
 }
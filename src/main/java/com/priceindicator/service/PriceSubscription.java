@@ -0,0 +1,16 @@
+package com.priceindicator.service;
+
+import com.priceindicator.domain.InstrumentId;
+import java.util.Set;
+
+public interface PriceSubscription {
+    //no prices are delivered after cancel returns, except the one being delivered at that moment
+    void cancel();
+    //prices dropped because the subscriber was too slow and its pending prices reached the limit
+    long getDroppedPrices();
+    //true while there are dropped instruments which were not taken yet
+    boolean isLagging();
+    //instruments whose latest change was dropped and not superseded by a delivered price since,
+    //their last prices should be read again, the returned instruments are forgotten
+    Set<InstrumentId> takeDroppedInstruments();
+}
@@ -0,0 +1,223 @@
+package com.priceindicator.service;
+
+import static java.util.Objects.isNull;
+
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.repository.LastPriceRepository;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+//a finishing run only merges its changed last prices into the pending prices of the matching subscribers,
+//the prices are delivered on separate threads, so a slow subscriber never slows finishBatchRun down
+@Component
+@Slf4j
+public class PriceSubscriptions {
+
+    public static final int DEFAULT_MAX_PENDING_PRICES = 10_000;
+
+    private final Set<Subscriber> allInstrumentsSubscribers = ConcurrentHashMap.newKeySet();
+    private final Map<InstrumentId, Set<Subscriber>> subscribersByInstrument = new ConcurrentHashMap<>();
+    private final ExecutorService deliveryExecutor;
+    private final int maxPendingPrices;
+
+    public PriceSubscriptions(LastPriceRepository lastPriceRepository) {
+        this(lastPriceRepository, 1, DEFAULT_MAX_PENDING_PRICES);
+    }
+
+    @Autowired
+    public PriceSubscriptions(
+        LastPriceRepository lastPriceRepository,
+        @Value("${priceindicator.subscription.delivery-threads:1}") int deliveryThreads,
+        @Value("${priceindicator.subscription.max-pending-prices:10000}") int maxPendingPrices) {
+        if (maxPendingPrices < 1) {
+            throw new IllegalArgumentException("Max pending prices must be positive");
+        }
+        this.maxPendingPrices = maxPendingPrices;
+        AtomicInteger threadNumber = new AtomicInteger();
+        deliveryExecutor = Executors.newFixedThreadPool(deliveryThreads, task -> {
+            Thread thread = new Thread(task, "price-subscription-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        lastPriceRepository.addChangeListener(this::pricesChanged);
+    }
+
+    public PriceSubscription subscribe(Collection<InstrumentId> instrumentIds, Consumer<Price> listener) {
+        Subscriber subscriber = new Subscriber(List.copyOf(instrumentIds), listener);
+        //added inside compute, so a concurrent cancel can not remove the set in between
+        instrumentIds.forEach(instrumentId -> subscribersByInstrument.compute(instrumentId, (id, subscribers) -> {
+            Set<Subscriber> instrumentSubscribers = isNull(subscribers) ? ConcurrentHashMap.newKeySet() : subscribers;
+            instrumentSubscribers.add(subscriber);
+            return instrumentSubscribers;
+        }));
+        return subscriber;
+    }
+
+    public PriceSubscription subscribeAll(Consumer<Price> listener) {
+        Subscriber subscriber = new Subscriber(null, listener);
+        allInstrumentsSubscribers.add(subscriber);
+        return subscriber;
+    }
+
+    @PreDestroy
+    public void close() {
+        deliveryExecutor.shutdownNow();
+    }
+
+    //called by the finishing thread, so it never waits for a subscriber
+    void pricesChanged(List<Price> changed) {
+        if (allInstrumentsSubscribers.isEmpty() && subscribersByInstrument.isEmpty()) {
+            return;
+        }
+        allInstrumentsSubscribers.forEach(subscriber -> subscriber.offer(changed));
+        if (subscribersByInstrument.isEmpty()) {
+            return;
+        }
+        //grouped first, so every subscriber takes its lock once per run
+        Map<Subscriber, List<Price>> pricesBySubscriber = new HashMap<>();
+        for (Price price : changed) {
+            Set<Subscriber> subscribers = subscribersByInstrument.get(price.getId());
+            if (!isNull(subscribers)) {
+                subscribers.forEach(subscriber ->
+                    pricesBySubscriber.computeIfAbsent(subscriber, s -> new ArrayList<>()).add(price));
+            }
+        }
+        pricesBySubscriber.forEach(Subscriber::offer);
+    }
+
+    private class Subscriber implements PriceSubscription {
+
+        //null when subscribed to all instruments
+        private final List<InstrumentId> instrumentIds;
+        private final Consumer<Price> listener;
+        //coalesced per instrument in arrival order, the eldest instrument is dropped when the limit is reached
+        private final LinkedHashMap<InstrumentId, Price> pendingPrices = new LinkedHashMap<>();
+        //a dropped instrument is remembered until it is taken or a newer price of it is pending again
+        private final Set<InstrumentId> droppedInstruments = new HashSet<>();
+        private boolean deliveryScheduled;
+        private volatile boolean canceled;
+        private long droppedPrices;
+
+        Subscriber(List<InstrumentId> instrumentIds, Consumer<Price> listener) {
+            this.instrumentIds = instrumentIds;
+            this.listener = listener;
+        }
+
+        void offer(List<Price> prices) {
+            synchronized (this) {
+                if (canceled) {
+                    return;
+                }
+                for (Price price : prices) {
+                    Price pending = pendingPrices.get(price.getId());
+                    if (isNull(pending)) {
+                        if (pendingPrices.size() == maxPendingPrices) {
+                            Iterator<Price> eldest = pendingPrices.values().iterator();
+                            droppedInstruments.add(eldest.next().getId());
+                            eldest.remove();
+                            droppedPrices++;
+                        }
+                        droppedInstruments.remove(price.getId());
+                        pendingPrices.put(price.getId(), price);
+                    } else {
+                        pendingPrices.put(price.getId(), Price.latest(pending, price));
+                    }
+                }
+                if (deliveryScheduled || pendingPrices.isEmpty()) {
+                    return;
+                }
+                deliveryScheduled = true;
+            }
+            scheduleDelivery();
+        }
+
+        //delivers what is pending at the moment and then yields the thread to the other subscribers
+        private void deliver() {
+            List<Price> prices;
+            synchronized (this) {
+                if (canceled) {
+                    deliveryScheduled = false;
+                    return;
+                }
+                prices = new ArrayList<>(pendingPrices.values());
+                pendingPrices.clear();
+            }
+            for (Price price : prices) {
+                if (canceled) {
+                    break;
+                }
+                try {
+                    listener.accept(price);
+                } catch (RuntimeException e) {
+                    log.error("Price subscriber failed", e);
+                }
+            }
+            synchronized (this) {
+                if (canceled || pendingPrices.isEmpty()) {
+                    deliveryScheduled = false;
+                    return;
+                }
+            }
+            scheduleDelivery();
+        }
+
+        private void scheduleDelivery() {
+            try {
+                deliveryExecutor.execute(this::deliver);
+            } catch (RejectedExecutionException e) {
+                log.debug("Price subscriber delivery is skipped on shutdown");
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                canceled = true;
+                pendingPrices.clear();
+                droppedInstruments.clear();
+            }
+            if (isNull(instrumentIds)) {
+                allInstrumentsSubscribers.remove(this);
+                return;
+            }
+            instrumentIds.forEach(instrumentId -> subscribersByInstrument.computeIfPresent(instrumentId,
+                (id, subscribers) -> subscribers.remove(this) && subscribers.isEmpty() ? null : subscribers));
+        }
+
+        @Override
+        public synchronized long getDroppedPrices() {
+            return droppedPrices;
+        }
+
+        @Override
+        public synchronized boolean isLagging() {
+            return !droppedInstruments.isEmpty();
+        }
+
+        @Override
+        public synchronized Set<InstrumentId> takeDroppedInstruments() {
+            Set<InstrumentId> taken = Set.copyOf(droppedInstruments);
+            droppedInstruments.clear();
+            return taken;
+        }
+    }
+}
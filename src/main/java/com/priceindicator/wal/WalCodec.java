@@ -0,0 +1,80 @@
+package com.priceindicator.wal;
+
+import com.priceindicator.codec.PriceBatchCodec;
+import com.priceindicator.domain.BatchRunId;
+import com.priceindicator.domain.PriceBatch;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+//record: body length, crc32 of the body, body
+//body: type and then the batch encoded by PriceBatchCodec for publish records or the batch run id for the others
+final class WalCodec {
+
+    static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final WalRecord.Type[] TYPES = WalRecord.Type.values();
+
+    private WalCodec() {
+    }
+
+    static ByteBuffer encode(WalRecord record) {
+        ByteBuffer encodedBatch = record.getType() == WalRecord.Type.PUBLISH
+            ? PriceBatchCodec.encode(PriceBatch.builder().batchRunId(record.getBatchRunId()).prices(record.getPrices()).build())
+            : null;
+        int bodySize = Byte.BYTES + (encodedBatch == null ? 2 * Long.BYTES : encodedBatch.remaining());
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bodySize);
+        buffer.position(HEADER_SIZE);
+        buffer.put((byte) record.getType().ordinal());
+        if (encodedBatch == null) {
+            UUID batchRunId = record.getBatchRunId().getBatchRunId();
+            buffer.putLong(batchRunId.getMostSignificantBits()).putLong(batchRunId.getLeastSignificantBits());
+        } else {
+            buffer.put(encodedBatch);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, bodySize);
+        buffer.putInt(0, bodySize).putInt(Integer.BYTES, (int) crc.getValue());
+        return buffer.flip();
+    }
+
+    //reading stops at the first incomplete or corrupted record, which can only be a torn write at the end of a segment
+    static void read(Path segment, Consumer<WalRecord> visitor) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int bodySize = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (bodySize <= 0 || bodySize > buffer.remaining()) {
+                return;
+            }
+            ByteBuffer body = buffer.slice().limit(bodySize);
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                return;
+            }
+            visitor.accept(decode(body));
+            buffer.position(buffer.position() + bodySize);
+        }
+    }
+
+    private static WalRecord decode(ByteBuffer body) {
+        WalRecord.Type type = TYPES[body.get()];
+        if (type == WalRecord.Type.PUBLISH) {
+            PriceBatch batch = PriceBatchCodec.decode(body);
+            return WalRecord.publish(batch.getBatchRunId(), batch.getPrices());
+        }
+        return new WalRecord(type, BatchRunId.of(new UUID(body.getLong(), body.getLong())), List.of());
+    }
+}
@@ -0,0 +1,38 @@
+package com.priceindicator.wal;
+
+import com.priceindicator.domain.BatchRunId;
+import com.priceindicator.domain.Price;
+import java.util.List;
+import lombok.Data;
+
+@Data
+public class WalRecord {
+
+    public enum Type {
+        ANNOUNCE,
+        PUBLISH,
+        FINISH,
+        CANCEL
+    }
+
+    private final Type type;
+    private final BatchRunId batchRunId;
+    //only publish records carry prices
+    private final List<Price> prices;
+
+    public static WalRecord announce(BatchRunId batchRunId) {
+        return new WalRecord(Type.ANNOUNCE, batchRunId, List.of());
+    }
+
+    public static WalRecord publish(BatchRunId batchRunId, List<Price> prices) {
+        return new WalRecord(Type.PUBLISH, batchRunId, prices);
+    }
+
+    public static WalRecord finish(BatchRunId batchRunId) {
+        return new WalRecord(Type.FINISH, batchRunId, List.of());
+    }
+
+    public static WalRecord cancel(BatchRunId batchRunId) {
+        return new WalRecord(Type.CANCEL, batchRunId, List.of());
+    }
+}
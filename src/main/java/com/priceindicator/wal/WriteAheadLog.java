@@ -0,0 +1,319 @@
+package com.priceindicator.wal;
+
+import com.priceindicator.domain.BatchRunId;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+//append-only log split into segment files, writers only enqueue encoded records and a single flusher thread
+//writes everything enqueued since the last commit with one write and one fsync (group commit)
+//segments are deleted at checkpoints, once every run they have records of is published and snapshotted or canceled
+@Component
+@Slf4j
+public class WriteAheadLog {
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long segmentSize;
+    private final boolean fsync;
+    private final long groupCommitDelayNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition committed = lock.newCondition();
+    private List<ByteBuffer> pending = new ArrayList<>();
+    private long appendedSequence;
+    private long committedSequence;
+    private IOException failure;
+    private volatile boolean open;
+    //segment which was current when a run was announced, until the prices of the run are published or it is canceled
+    private final ConcurrentMap<BatchRunId, Long> unpublishedRuns = new ConcurrentHashMap<>();
+
+    //owned by the flusher thread once the log is open, the segment number is also read by checkpoints
+    private Thread flusher;
+    private FileChannel segment;
+    private volatile long segmentNumber;
+    private long segmentBytes;
+
+    //disabled log, every call is a no-op
+    public WriteAheadLog() {
+        this(false, Path.of("wal"), DEFAULT_SEGMENT_SIZE, true, Duration.ZERO);
+    }
+
+    @Autowired
+    public WriteAheadLog(
+        @Value("${priceindicator.wal.enabled:false}") boolean enabled,
+        @Value("${priceindicator.wal.directory:wal}") String directory,
+        @Value("${priceindicator.wal.segment-size:67108864}") long segmentSize,
+        @Value("${priceindicator.wal.fsync:true}") boolean fsync,
+        @Value("${priceindicator.wal.group-commit-delay:PT0.001S}") Duration groupCommitDelay) {
+        this(enabled, Path.of(directory), segmentSize, fsync, groupCommitDelay);
+    }
+
+    public WriteAheadLog(boolean enabled, Path directory, long segmentSize, boolean fsync, Duration groupCommitDelay) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        this.groupCommitDelayNanos = groupCommitDelay.toNanos();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //replays every logged record in order and only then opens a new segment for writing,
+    //so records produced while the repositories are rebuilt are not logged a second time
+    public void recover(Consumer<WalRecord> visitor) {
+        if (!enabled || open) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            List<Path> segments = listSegments();
+            for (Path logged : segments) {
+                long number = numberOf(logged);
+                WalCodec.read(logged, record -> {
+                    visitor.accept(record);
+                    //a replayed finish is applied by the visitor right away, so its prices are already published
+                    if (record.getType() == WalRecord.Type.ANNOUNCE) {
+                        unpublishedRuns.putIfAbsent(record.getBatchRunId(), number);
+                    } else if (record.getType() != WalRecord.Type.PUBLISH) {
+                        unpublishedRuns.remove(record.getBatchRunId());
+                    }
+                });
+            }
+            segmentNumber = segments.isEmpty() ? 0 : numberOf(segments.get(segments.size() - 1)) + 1;
+            openSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Write-ahead log can not be recovered", e);
+        }
+        open = true;
+        flusher = new Thread(this::flush, "wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Write-ahead log recovered from {}", directory);
+    }
+
+    //records are ignored until the log is recovered, after a failed commit nothing is enqueued anymore
+    public void append(WalRecord record) {
+        if (!open) {
+            return;
+        }
+        ByteBuffer encoded = WalCodec.encode(record);
+        //the run is registered before its record is enqueued, so a checkpoint either sees the run or the record
+        //is written into a segment the checkpoint keeps
+        if (record.getType() == WalRecord.Type.ANNOUNCE) {
+            unpublishedRuns.putIfAbsent(record.getBatchRunId(), segmentNumber);
+        } else if (record.getType() == WalRecord.Type.CANCEL) {
+            unpublishedRuns.remove(record.getBatchRunId());
+        }
+        lock.lock();
+        try {
+            if (!open) {
+                return;
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Write-ahead log is not writable", failure);
+            }
+            pending.add(encoded);
+            appendedSequence++;
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //waits until every record appended before this call is written, all waiters of a group commit share its fsync
+    public void sync() {
+        if (!open) {
+            return;
+        }
+        lock.lock();
+        try {
+            long target = appendedSequence;
+            while (committedSequence < target) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Write-ahead log is not writable", failure);
+                }
+                committed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //the prices of a finished run are published, so the next snapshot covers its records
+    public void published(BatchRunId batchRunId) {
+        unpublishedRuns.remove(batchRunId);
+    }
+
+    //taken right before last prices are snapshotted, segments before the returned one hold only records of runs
+    //which are published before the snapshot or canceled
+    public long checkpoint() {
+        long checkpoint = segmentNumber;
+        for (long announced : unpublishedRuns.values()) {
+            checkpoint = Math.min(checkpoint, announced);
+        }
+        return checkpoint;
+    }
+
+    //called once the snapshot taken after the checkpoint is written, returns the number of deleted segments
+    public int truncate(long checkpoint) {
+        if (!open) {
+            return 0;
+        }
+        int deleted = 0;
+        try {
+            for (Path logged : listSegments()) {
+                if (numberOf(logged) >= Math.min(checkpoint, segmentNumber)) {
+                    break;
+                }
+                Files.delete(logged);
+                deleted++;
+            }
+        } catch (IOException e) {
+            log.error("Write-ahead log segments can not be deleted", e);
+        }
+        return deleted;
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        lock.lock();
+        try {
+            if (!open) {
+                return;
+            }
+            open = false;
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+        //the flusher commits everything appended before the log was closed
+        flusher.join(TimeUnit.SECONDS.toMillis(5));
+        try {
+            segment.close();
+        } catch (IOException e) {
+            log.error("Write-ahead log segment can not be closed", e);
+        }
+    }
+
+    private void flush() {
+        while (true) {
+            List<ByteBuffer> batch;
+            long sequence;
+            lock.lock();
+            try {
+                while (pending.isEmpty() && open) {
+                    appended.awaitUninterruptibly();
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            //waiting a little lets more writers join the same commit, so one fsync covers more of them
+            if (groupCommitDelayNanos > 0) {
+                LockSupport.parkNanos(groupCommitDelayNanos);
+            }
+            lock.lock();
+            try {
+                batch = pending;
+                pending = new ArrayList<>();
+                sequence = appendedSequence;
+            } finally {
+                lock.unlock();
+            }
+
+            //appenders keep enqueueing the next group while this one is written
+            IOException writeFailure = null;
+            try {
+                write(batch);
+            } catch (IOException e) {
+                log.error("Write-ahead log commit failed", e);
+                writeFailure = e;
+            }
+            lock.lock();
+            try {
+                if (writeFailure != null) {
+                    failure = writeFailure;
+                } else {
+                    committedSequence = sequence;
+                }
+                committed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (writeFailure != null) {
+                return;
+            }
+        }
+    }
+
+    private void write(List<ByteBuffer> batch) throws IOException {
+        long bytes = batch.stream().mapToLong(ByteBuffer::remaining).sum();
+        if (segmentBytes > 0 && segmentBytes + bytes > segmentSize) {
+            segment.force(false);
+            segment.close();
+            segmentNumber++;
+            openSegment();
+        }
+        ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+        long written = 0;
+        while (written < bytes) {
+            written += segment.write(buffers);
+        }
+        segmentBytes += bytes;
+        if (fsync) {
+            segment.force(false);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        segment = FileChannel.open(directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX)),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentBytes = 0;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                .filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static long numberOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
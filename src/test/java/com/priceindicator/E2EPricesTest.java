@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.priceindicator.domain.BatchRunId;
 import com.priceindicator.domain.BatchRunStatus;
+import com.priceindicator.domain.BatchRunStatus.Status;
 import com.priceindicator.domain.Price;
 import com.priceindicator.domain.PriceBatch;
 import com.priceindicator.domain.InstrumentId;
@@ -16,6 +17,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -74,6 +76,35 @@ public class E2EPricesTest {
         assertEquals(targetPrice.getPayload(), priceConsumer.getLastPriceById(targetPrice.getId()).get());
     }
 
+    @Test
+    void testPositiveFlowWithAsyncPublishing() throws Exception {
+        //announce
+        BatchRunStatus batchStatus = pricePublisher.announceBatchRun();
+
+        //publish
+        List<CompletableFuture<BatchRunStatus>> results = new ArrayList<>();
+        Price targetPrice = null;
+        for (int j = 0; j < 100; j++) {
+            Price price = Price.builder()
+                .id(InstrumentId.of(UUID.randomUUID().toString()))
+                .asOf(LocalDateTime.now())
+                .payload(PricePayload.of("payload " + j))
+                .build();
+            targetPrice = price;
+            PriceBatch batch = PriceBatch.builder().batchRunId(batchStatus.getBatchRunId()).prices(List.of(price)).build();
+            results.add(pricePublisher.publishBatchAsync(batch));
+        }
+
+        //finish
+        pricePublisher.finishBatchRun(batchStatus.getBatchRunId());
+
+        //fetch
+        for (CompletableFuture<BatchRunStatus> result : results) {
+            assertEquals(Status.IN_PROGRESS, result.get(2, TimeUnit.SECONDS).getStatus());
+        }
+        assertEquals(targetPrice.getPayload(), priceConsumer.getLastPriceById(targetPrice.getId()).get());
+    }
+
     @Test
     void when_publishWithoutAnnounce_canNotFetch() {
         //publish
@@ -0,0 +1,81 @@
+package com.priceindicator.codec;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class Lz4Test {
+
+    @Test
+    void decompress_shouldRestoreCompressedBytes() {
+        //arrange
+        Random random = new Random(42);
+        byte[] incompressible = new byte[10_000];
+        random.nextBytes(incompressible);
+        byte[] longRun = new byte[100_000];
+        Arrays.fill(longRun, (byte) 'a');
+        byte[][] inputs = {
+            new byte[0],
+            "short".getBytes(UTF_8),
+            "{\"bid\":101.25,\"ask\":101.5,\"currency\":\"EUR\"}".repeat(50).getBytes(UTF_8),
+            incompressible,
+            longRun
+        };
+
+        //act && assert
+        for (byte[] input : inputs) {
+            byte[] compressed = Lz4.compress(input, 0, input.length);
+            assertArrayEquals(input, Lz4.decompress(compressed, input.length));
+        }
+    }
+
+    @Test
+    void compress_shouldCompressOnlyTheGivenRange() {
+        //arrange
+        byte[] input = ("header" + "payload ".repeat(100) + "trailer").getBytes(UTF_8);
+        int offset = "header".length();
+        int length = "payload ".length() * 100;
+
+        //act
+        byte[] compressed = Lz4.compress(input, offset, length);
+
+        //assert
+        assertTrue(compressed.length < length / 10);
+        assertArrayEquals(Arrays.copyOfRange(input, offset, offset + length), Lz4.decompress(compressed, length));
+    }
+
+    @Test
+    void decompress_shouldRestoreRepetitivePayloads() {
+        //arrange
+        byte[] input = IntStream.range(0, 10_000)
+            .mapToObj(number -> "{\"bid\":" + (100 + number % 7) + ",\"ask\":" + (101 + number % 5) + "}")
+            .collect(Collectors.joining())
+            .getBytes(UTF_8);
+
+        //act
+        byte[] compressed = Lz4.compress(input, 0, input.length);
+
+        //assert
+        assertTrue(compressed.length < input.length / 2);
+        assertArrayEquals(input, Lz4.decompress(compressed, input.length));
+    }
+
+    @Test
+    void decompress_withMalformedBlock_shouldThrowException() {
+        //arrange
+        byte[] input = "payload ".repeat(100).getBytes(UTF_8);
+        byte[] compressed = Lz4.compress(input, 0, input.length);
+
+        //act && assert
+        assertThrows(IllegalArgumentException.class,
+            () -> Lz4.decompress(Arrays.copyOf(compressed, compressed.length - 3), input.length));
+        assertThrows(IllegalArgumentException.class, () -> Lz4.decompress(compressed, input.length + 1));
+    }
+}
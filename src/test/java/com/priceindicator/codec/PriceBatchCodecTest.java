@@ -0,0 +1,128 @@
+package com.priceindicator.codec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.priceindicator.domain.BatchRunId;
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PriceBatch;
+import com.priceindicator.domain.PricePayload;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class PriceBatchCodecTest {
+
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @Test
+    void decode_shouldReturnEncodedBatch() {
+        //arrange
+        //prices are out of time order, instruments repeat and one asOf is before the epoch
+        PriceBatch batch = createBatch(List.of(
+            createPrice("instrument", now, "payload"),
+            createPrice("другой instrument", now.minusDays(1), "другой payload"),
+            createPrice("instrument", now.plusNanos(1), ""),
+            createPrice("old instrument", LocalDateTime.of(1960, 1, 1, 0, 0, 0, 123), "old payload")));
+
+        //act
+        PriceBatch decoded = PriceBatchCodec.decode(PriceBatchCodec.encode(batch));
+
+        //assert
+        assertEquals(batch, decoded);
+    }
+
+    @Test
+    void decode_withAsOfOutsideOfEpochNanosRange_shouldReturnEncodedBatch() {
+        //arrange
+        //a long of epoch nanos holds only the years 1677 to 2262
+        PriceBatch batch = createBatch(List.of(
+            createPrice("instrument", LocalDateTime.of(3000, 1, 1, 0, 0, 0, 1), "future payload"),
+            createPrice("instrument", LocalDateTime.of(1500, 6, 1, 12, 0, 0, 999_999_999), "past payload"),
+            createPrice("instrument", LocalDateTime.MAX, "max payload"),
+            createPrice("instrument", LocalDateTime.MIN, "min payload")));
+
+        //act
+        PriceBatch decoded = PriceBatchCodec.decode(PriceBatchCodec.encode(batch));
+
+        //assert
+        assertEquals(batch, decoded);
+    }
+
+    @Test
+    void decode_shouldShareInstrumentIdsOfOneBatch() {
+        //arrange
+        PriceBatch batch = createBatch(List.of(createPrice("instrument", now, "payload"), createPrice("instrument", now, "payload")));
+
+        //act
+        PriceBatch decoded = PriceBatchCodec.decode(PriceBatchCodec.encode(batch));
+
+        //assert
+        assertSame(decoded.getPrices().get(0).getId(), decoded.getPrices().get(1).getId());
+    }
+
+    @Test
+    void decode_withDirectBufferOfSeveralBatches_shouldReadThemOneAfterAnother() {
+        //arrange
+        PriceBatch first = createBatch(List.of(createPrice("instrument", now, "first payload")));
+        PriceBatch second = createBatch(List.of(createPrice("instrument", now, "second payload")));
+        ByteBuffer encodedFirst = PriceBatchCodec.encode(first);
+        ByteBuffer encodedSecond = PriceBatchCodec.encode(second);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(encodedFirst.remaining() + encodedSecond.remaining());
+        buffer.put(encodedFirst).put(encodedSecond).flip();
+
+        //act
+        PriceBatch decodedFirst = PriceBatchCodec.decode(buffer);
+        PriceBatch decodedSecond = PriceBatchCodec.decode(buffer);
+
+        //assert
+        assertEquals(first, decodedFirst);
+        assertEquals(second, decodedSecond);
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void encode_withRepeatedInstrumentsAndCloseTimestamps_shouldBeCompact() {
+        //arrange
+        List<Price> prices = IntStream.range(0, 1000)
+            .mapToObj(number -> createPrice("instrument " + number % 10, now.plusSeconds(number), "p"))
+            .collect(Collectors.toList());
+
+        //act
+        ByteBuffer encoded = PriceBatchCodec.encode(createBatch(prices));
+
+        //assert
+        //every price takes index, seconds and nanos deltas, payload length and payload, the ids are written only once
+        assertTrue(encoded.remaining() < 1000 * 10, "encoded size " + encoded.remaining());
+    }
+
+    @Test
+    void decode_withTruncatedBatch_shouldThrowException() {
+        //arrange
+        ByteBuffer encoded = PriceBatchCodec.encode(createBatch(List.of(createPrice("instrument", now, "payload"))));
+        encoded.limit(encoded.limit() - 1);
+
+        //act && assert
+        assertThrows(IllegalArgumentException.class, () -> PriceBatchCodec.decode(encoded));
+    }
+
+    private static PriceBatch createBatch(List<Price> prices) {
+        return PriceBatch.builder().batchRunId(BatchRunId.of(UUID.randomUUID())).prices(prices).build();
+    }
+
+    private static Price createPrice(String instrumentId, LocalDateTime asOf, String payload) {
+        return Price.builder()
+            .id(InstrumentId.of(instrumentId))
+            .asOf(asOf)
+            .payload(PricePayload.of(payload))
+            .build();
+    }
+}
@@ -0,0 +1,67 @@
+package com.priceindicator.concurrent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentPagedArrayTest {
+
+    private final int coresNumber = Runtime.getRuntime().availableProcessors();
+
+    @Test
+    void get_withNotSetIndex_shouldReturnNull() {
+        //arrange
+        ConcurrentPagedArray<String> array = new ConcurrentPagedArray<>();
+        array.set(5, "five");
+
+        //act && assert
+        assertNull(array.get(4));
+        assertNull(array.get(1_000_000));
+        assertEquals("five", array.get(5));
+    }
+
+    @Test
+    void computeIfAbsent_shouldCreateElementOnlyOnce() {
+        //arrange
+        ConcurrentPagedArray<String> array = new ConcurrentPagedArray<>();
+
+        //act
+        String first = array.computeIfAbsent(100_000, index -> "value " + index);
+        String second = array.computeIfAbsent(100_000, index -> "another value");
+
+        //assert
+        assertEquals("value 100000", first);
+        assertSame(first, second);
+    }
+
+    @Test
+    void merge_shouldNotLoseUpdatesDoneConcurrently() throws InterruptedException {
+        //arrange
+        ConcurrentPagedArray<Integer> array = new ConcurrentPagedArray<>();
+        ExecutorService executorService = Executors.newFixedThreadPool(coresNumber);
+
+        //act
+        for (int j = 0; j < 100; j++) {
+            executorService.execute(() -> {
+                for (int index = 0; index < 5000; index++) {
+                    array.merge(index, 1, Integer::sum);
+                }
+            });
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(5, TimeUnit.SECONDS);
+
+        //assert
+        List<Integer> values = new ArrayList<>();
+        array.forEach(values::add);
+        assertEquals(5000, values.size());
+        values.forEach(value -> assertEquals(100, value));
+    }
+}
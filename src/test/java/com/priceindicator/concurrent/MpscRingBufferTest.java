@@ -0,0 +1,85 @@
+package com.priceindicator.concurrent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class MpscRingBufferTest {
+
+    private final int coresNumber = Runtime.getRuntime().availableProcessors();
+
+    @Test
+    void constructor_shouldRoundCapacityUpToPowerOfTwoOfAtLeastTwo() {
+        assertEquals(8, new MpscRingBuffer<Integer>(5).capacity());
+        assertEquals(8, new MpscRingBuffer<Integer>(8).capacity());
+        assertEquals(2, new MpscRingBuffer<Integer>(1).capacity());
+    }
+
+    @Test
+    void offer_withFullBuffer_shouldReturnFalse() {
+        //arrange
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(2);
+        buffer.offer(1);
+        buffer.offer(2);
+
+        //act && assert
+        assertFalse(buffer.offer(3));
+        assertEquals(1, buffer.poll());
+        assertTrue(buffer.offer(3));
+    }
+
+    @Test
+    void poll_shouldReturnElementsInOfferOrder() {
+        //arrange
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+
+        //act
+        for (int i = 0; i < 10; i++) {
+            buffer.offer(i);
+            buffer.offer(i + 100);
+
+            //assert
+            assertEquals(i, buffer.poll());
+            assertEquals(i + 100, buffer.poll());
+        }
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    void offer_shouldNotLoseElementsOfferedConcurrently() throws InterruptedException {
+        //arrange
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(64);
+        ExecutorService executorService = Executors.newFixedThreadPool(coresNumber);
+        int elementsCount = 10_000;
+        Set<Integer> polled = new HashSet<>();
+
+        //act
+        for (int i = 0; i < elementsCount; i++) {
+            int element = i;
+            executorService.execute(() -> {
+                while (!buffer.offer(element)) {
+                    Thread.onSpinWait();
+                }
+            });
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (polled.size() < elementsCount && System.nanoTime() < deadline) {
+            Integer element = buffer.poll();
+            if (element != null) {
+                polled.add(element);
+            }
+        }
+        executorService.shutdown();
+
+        //assert
+        assertEquals(elementsCount, polled.size());
+    }
+}
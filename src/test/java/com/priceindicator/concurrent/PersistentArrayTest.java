@@ -0,0 +1,91 @@
+package com.priceindicator.concurrent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class PersistentArrayTest {
+
+    @Test
+    void get_onEmptyArray_shouldReturnNull() {
+        //arrange
+        PersistentArray<String> array = PersistentArray.empty();
+
+        //act && assert
+        assertNull(array.get(0));
+        assertNull(array.get(Integer.MAX_VALUE));
+        assertNull(array.get(-1));
+    }
+
+    @Test
+    void build_shouldNotChangePreviousVersion() {
+        //arrange
+        PersistentArray.Editor<String> editor = PersistentArray.<String>empty().edit();
+        editor.set(1, "first");
+        editor.set(40_000, "first");
+        PersistentArray<String> first = editor.build();
+
+        //act
+        PersistentArray.Editor<String> nextEditor = first.edit();
+        nextEditor.set(1, "second");
+        nextEditor.set(Integer.MAX_VALUE, "second");
+        PersistentArray<String> second = nextEditor.build();
+
+        //assert
+        assertEquals("first", first.get(1));
+        assertEquals("first", first.get(40_000));
+        assertNull(first.get(Integer.MAX_VALUE));
+        assertEquals("second", second.get(1));
+        assertEquals("first", second.get(40_000));
+        assertEquals("second", second.get(Integer.MAX_VALUE));
+        assertEquals(first.version() + 1, second.version());
+    }
+
+    @Test
+    void merge_shouldCombineWithExistingElement() {
+        //arrange
+        PersistentArray.Editor<Integer> editor = PersistentArray.<Integer>empty().edit();
+        for (int i = 0; i < 100_000; i++) {
+            editor.merge(i % 1000, 1, Integer::sum);
+        }
+
+        //act
+        PersistentArray<Integer> array = editor.build();
+
+        //assert
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(100, array.get(i));
+        }
+        assertNull(array.get(1000));
+    }
+
+    @Test
+    void editorGet_shouldSeeUnbuiltChanges() {
+        //arrange
+        PersistentArray.Editor<String> editor = PersistentArray.<String>empty().edit();
+        editor.set(1, "first");
+        PersistentArray<String> first = editor.build();
+        PersistentArray.Editor<String> nextEditor = first.edit();
+
+        //act
+        nextEditor.set(40_000, "second");
+
+        //assert
+        assertEquals("first", nextEditor.get(1));
+        assertEquals("second", nextEditor.get(40_000));
+        assertNull(nextEditor.get(2));
+        assertNull(first.get(40_000));
+    }
+
+    @Test
+    void edit_afterBuild_shouldThrowException() {
+        //arrange
+        PersistentArray.Editor<String> editor = PersistentArray.<String>empty().edit();
+        editor.build();
+
+        //act && assert
+        assertThrows(IllegalStateException.class, () -> editor.set(0, "value"));
+    }
+}
@@ -3,11 +3,16 @@ package com.priceindicator.repository;
 import static org.junit.jupiter.api.Assertions.*;
 
 import com.priceindicator.domain.BatchRunId;
+import com.priceindicator.domain.BatchRunStatus.Status;
 import com.priceindicator.domain.Price;
 import com.priceindicator.domain.PriceBatch;
 import com.priceindicator.domain.InstrumentId;
 import com.priceindicator.domain.PricePayload;
+import com.priceindicator.repository.exception.BatchClosedException;
+import com.priceindicator.repository.exception.BatchExpiredException;
 import com.priceindicator.repository.exception.BatchNotFoundException;
+import com.priceindicator.wal.WriteAheadLog;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -17,6 +22,8 @@ import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.IntStream;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
@@ -52,7 +59,7 @@ class BatchRepositoryTest {
         executorService.awaitTermination(2, TimeUnit.SECONDS);
 
         //assert
-        Map<BatchRunId, List<Price>> repoBatchesMap = getRepoBatchesMap();
+        Map<BatchRunId, BatchRun> repoBatchesMap = getRepoBatchesMap();
         assertTrue(repoBatchesMap.keySet().containsAll(batches));
         repoBatchesMap.forEach((key, value) -> assertNotNull(value));
     }
@@ -87,9 +94,9 @@ class BatchRepositoryTest {
         executorService.awaitTermination(2, TimeUnit.SECONDS);
 
         //assert
-        Map<BatchRunId, List<Price>> repoBatchesMap = getRepoBatchesMap();
+        Map<BatchRunId, BatchRun> repoBatchesMap = getRepoBatchesMap();
         assertEquals(batchesCount, repoBatchesMap.size());
-        repoBatchesMap.forEach((batchRunId, prices) -> assertEquals(2000, prices.size()));
+        repoBatchesMap.forEach((batchRunId, batchRun) -> assertEquals(2000, batchRun.getPrices().size()));
     }
 
     @Test
@@ -111,7 +118,7 @@ class BatchRepositoryTest {
         repository.removeBatchRun(batchRunId);
 
         //assert
-        Map<BatchRunId, List<Price>> repoBatchesMap = getRepoBatchesMap();
+        Map<BatchRunId, BatchRun> repoBatchesMap = getRepoBatchesMap();
         assertNull(repoBatchesMap.get(batchRunId));
     }
 
@@ -141,6 +148,84 @@ class BatchRepositoryTest {
         assertEquals(pricesCount, priceList.size());
     }
 
+    @Test
+    void stagedBytes_shouldCountBytesOfOpenRunsOnly() {
+        //arrange
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        BatchRunId releasedBatchRunId = BatchRunId.of(UUID.randomUUID());
+        Price price = Price.builder()
+            .id(InstrumentId.of("id"))
+            .asOf(LocalDateTime.now())
+            .payload(PricePayload.of("payload"))
+            .build();
+        repository.announceBatchRun(batchRunId);
+        repository.announceBatchRun(releasedBatchRunId);
+        repository.addPrices(PriceBatch.builder().batchRunId(batchRunId).prices(List.of(price, price)).build());
+        repository.addPrices(PriceBatch.builder().batchRunId(releasedBatchRunId).prices(List.of(price)).build());
+
+        //act
+        repository.releaseBatchRun(releasedBatchRunId);
+
+        //assert
+        assertEquals(1, repository.activeRunCount());
+        assertEquals(2 * Character.BYTES * "idpayload".length(), repository.stagedBytes());
+    }
+
+    @Test
+    void stagedBytes_afterCancelAndExpiry_shouldDropBytesOfClosedRuns() {
+        //arrange
+        AtomicLong nanoClock = new AtomicLong();
+        repository = new BatchRepository(BatchRepository.StagingMode.FULL, Duration.ofMillis(50), new WriteAheadLog(), nanoClock::get);
+        BatchRunId canceledBatchRunId = BatchRunId.of(UUID.randomUUID());
+        BatchRunId expiredBatchRunId = BatchRunId.of(UUID.randomUUID());
+        Price price = Price.builder()
+            .id(InstrumentId.of("id"))
+            .asOf(LocalDateTime.now())
+            .payload(PricePayload.of("payload"))
+            .build();
+        repository.announceBatchRun(canceledBatchRunId);
+        repository.announceBatchRun(expiredBatchRunId);
+        repository.addPrices(PriceBatch.builder().batchRunId(canceledBatchRunId).prices(List.of(price)).build());
+        repository.addPrices(PriceBatch.builder().batchRunId(expiredBatchRunId).prices(List.of(price)).build());
+
+        //act
+        repository.removeBatchRun(canceledBatchRunId);
+        long afterCancel = repository.stagedBytes();
+        nanoClock.addAndGet(Duration.ofMillis(50).toNanos());
+        repository.expireIdleBatchRuns();
+
+        //assert
+        assertEquals(Character.BYTES * "idpayload".length(), afterCancel);
+        assertEquals(0, repository.stagedBytes());
+    }
+
+    @Test
+    void releaseBatch_withLatestStagingMode_shouldReturnLatestPricePerInstrument() {
+        //arrange
+        repository = new BatchRepository(BatchRepository.StagingMode.LATEST, BatchRepository.DEFAULT_TTL);
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        repository.announceBatchRun(batchRunId);
+        InstrumentId instrumentId = InstrumentId.of(UUID.randomUUID().toString());
+        Price hourAgoPrice = Price.builder()
+            .id(instrumentId)
+            .asOf(LocalDateTime.now().minusHours(1))
+            .payload(PricePayload.of("hour ago payload"))
+            .build();
+        Price nowPrice = Price.builder()
+            .id(instrumentId)
+            .asOf(LocalDateTime.now())
+            .payload(PricePayload.of("now payload"))
+            .build();
+        repository.addPrices(PriceBatch.builder().batchRunId(batchRunId).prices(List.of(nowPrice)).build());
+        repository.addPrices(PriceBatch.builder().batchRunId(batchRunId).prices(List.of(hourAgoPrice)).build());
+
+        //act
+        List<Price> priceList = repository.releaseBatchRun(batchRunId);
+
+        //assert
+        assertEquals(List.of(nowPrice), priceList);
+    }
+
     @Test
     void releaseBatch_withNoBatch_shouldReturnEmptyList() {
         //arrange
@@ -150,8 +235,159 @@ class BatchRepositoryTest {
         assertTrue(repository.releaseBatchRun(batchRunId).isEmpty());
     }
 
+    @Test
+    void finishBatchRun_withRunNotSealedByCaller_shouldThrowExceptionWithStatusOfRun() {
+        //arrange
+        BatchRunId finishedBatchRunId = BatchRunId.of(UUID.randomUUID());
+        BatchRunId canceledBatchRunId = BatchRunId.of(UUID.randomUUID());
+        repository.announceBatchRun(finishedBatchRunId);
+        repository.announceBatchRun(canceledBatchRunId);
+        repository.finishBatchRun(finishedBatchRunId);
+        repository.removeBatchRun(canceledBatchRunId);
+
+        //act
+        BatchClosedException finished = assertThrows(BatchClosedException.class, () -> repository.finishBatchRun(finishedBatchRunId));
+        BatchClosedException canceled = assertThrows(BatchClosedException.class, () -> repository.finishBatchRun(canceledBatchRunId));
+
+        //assert
+        assertEquals(Status.FINISHED, finished.getStatus());
+        assertEquals(Status.CANCELED, canceled.getStatus());
+        assertThrows(BatchNotFoundException.class, () -> repository.finishBatchRun(BatchRunId.of(UUID.randomUUID())));
+    }
+
+    @Test
+    void addPrices_afterRelease_shouldThrowExceptionWithFinishedStatus() {
+        //arrange
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        repository.announceBatchRun(batchRunId);
+        repository.releaseBatchRun(batchRunId);
+        PriceBatch batch = PriceBatch.builder().batchRunId(batchRunId).prices(Collections.emptyList()).build();
+
+        //act
+        BatchClosedException exception = assertThrows(BatchClosedException.class, () -> repository.addPrices(batch));
+
+        //assert
+        assertEquals(Status.FINISHED, exception.getStatus());
+    }
+
+    @Test
+    void addPrices_afterRemove_shouldThrowExceptionWithCanceledStatus() {
+        //arrange
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        repository.announceBatchRun(batchRunId);
+        repository.removeBatchRun(batchRunId);
+        PriceBatch batch = PriceBatch.builder().batchRunId(batchRunId).prices(Collections.emptyList()).build();
+
+        //act
+        BatchClosedException exception = assertThrows(BatchClosedException.class, () -> repository.addPrices(batch));
+
+        //assert
+        assertEquals(Status.CANCELED, exception.getStatus());
+    }
+
+    @Test
+    void releaseBatch_withConcurrentPublishers_shouldReleaseEveryAcceptedPrice() throws InterruptedException {
+        //arrange
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        repository.announceBatchRun(batchRunId);
+        List<Price> prices = new ArrayList<>();
+        IntStream.range(0, 10).forEach(number -> prices.add(Price.builder()
+            .id(InstrumentId.of(UUID.randomUUID().toString()))
+            .asOf(LocalDateTime.now())
+            .payload(PricePayload.of("payload " + number))
+            .build()));
+        PriceBatch batch = PriceBatch.builder().batchRunId(batchRunId).prices(prices).build();
+        AtomicInteger accepted = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(coresNumber);
+        for (int j = 0; j < coresNumber; j++) {
+            executorService.execute(() -> {
+                try {
+                    while (true) {
+                        repository.addPrices(batch);
+                        accepted.incrementAndGet();
+                    }
+                } catch (BatchClosedException e) {
+                    log.debug("Batch run is closed");
+                }
+            });
+        }
+        Thread.sleep(50);
+
+        //act
+        List<Price> released = repository.releaseBatchRun(batchRunId);
+        executorService.shutdown();
+        executorService.awaitTermination(2, TimeUnit.SECONDS);
+
+        //assert
+        assertEquals(accepted.get() * prices.size(), released.size());
+    }
+
+    @Test
+    void expireIdleBatchRuns_shouldRemoveIdleBatchRunAndReportItAsExpired() {
+        //arrange
+        AtomicLong nanoClock = new AtomicLong();
+        repository = new BatchRepository(BatchRepository.StagingMode.FULL, Duration.ofMillis(50), new WriteAheadLog(), nanoClock::get);
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        repository.announceBatchRun(batchRunId);
+        PriceBatch batch = PriceBatch.builder().batchRunId(batchRunId).prices(Collections.emptyList()).build();
+        nanoClock.addAndGet(Duration.ofMillis(50).toNanos());
+
+        //act
+        repository.expireIdleBatchRuns();
+
+        //assert
+        assertNull(getRepoBatchesMap().get(batchRunId));
+        assertThrows(BatchExpiredException.class, () -> repository.addPrices(batch));
+    }
+
+    @Test
+    void expireIdleBatchRuns_shouldKeepActiveBatchRun() {
+        //arrange
+        AtomicLong nanoClock = new AtomicLong();
+        repository = new BatchRepository(BatchRepository.StagingMode.FULL, Duration.ofMillis(500), new WriteAheadLog(), nanoClock::get);
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        repository.announceBatchRun(batchRunId);
+        PriceBatch batch = PriceBatch.builder().batchRunId(batchRunId).prices(Collections.emptyList()).build();
+        nanoClock.addAndGet(Duration.ofMillis(300).toNanos());
+        repository.addPrices(batch);
+        nanoClock.addAndGet(Duration.ofMillis(300).toNanos());
+
+        //act
+        repository.expireIdleBatchRuns();
+
+        //assert
+        assertNotNull(getRepoBatchesMap().get(batchRunId));
+    }
+
+    @Test
+    void closeListeners_shouldBeCalledForFinishedCanceledAndExpiredRuns() {
+        //arrange
+        AtomicLong nanoClock = new AtomicLong();
+        repository = new BatchRepository(BatchRepository.StagingMode.FULL, Duration.ofMillis(50), new WriteAheadLog(), nanoClock::get);
+        BatchRunId finishedBatchRunId = BatchRunId.of(UUID.randomUUID());
+        BatchRunId canceledBatchRunId = BatchRunId.of(UUID.randomUUID());
+        BatchRunId expiredBatchRunId = BatchRunId.of(UUID.randomUUID());
+        List<BatchRunId> closedBatchRunIds = new ArrayList<>();
+        repository.addCloseListener(closedBatchRunIds::add);
+        repository.announceBatchRun(finishedBatchRunId);
+        repository.announceBatchRun(canceledBatchRunId);
+        repository.announceBatchRun(expiredBatchRunId);
+
+        //act
+        repository.releaseBatchRunChunks(finishedBatchRunId);
+        repository.removeBatchRun(canceledBatchRunId);
+        nanoClock.addAndGet(Duration.ofMillis(50).toNanos());
+        repository.expireIdleBatchRuns();
+
+        //assert
+        assertEquals(List.of(finishedBatchRunId, canceledBatchRunId, expiredBatchRunId), closedBatchRunIds);
+        assertFalse(repository.isOpen(finishedBatchRunId));
+        assertFalse(repository.isOpen(canceledBatchRunId));
+        assertFalse(repository.isOpen(expiredBatchRunId));
+    }
+
     //yes, I know it is hacky, but I believe it is better than return values only for tests
-    private Map<BatchRunId, List<Price>> getRepoBatchesMap() {
-        return (Map<BatchRunId, List<Price>>) ReflectionTestUtils.getField(repository, "batchRuns");
+    private Map<BatchRunId, BatchRun> getRepoBatchesMap() {
+        return (Map<BatchRunId, BatchRun>) ReflectionTestUtils.getField(repository, "batchRuns");
     }
 }
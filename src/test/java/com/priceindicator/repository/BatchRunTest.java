@@ -0,0 +1,86 @@
+package com.priceindicator.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.priceindicator.domain.BatchRunStatus.Status;
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PricePayload;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BatchRunTest {
+
+    private static final List<Price> PRICES = List.of(Price.builder()
+        .id(InstrumentId.of("id"))
+        .asOf(LocalDateTime.now())
+        .payload(PricePayload.of("payload"))
+        .build());
+
+    private BatchRun batchRun;
+
+    @BeforeEach
+    void setUp() {
+        batchRun = new BatchRun(new ChunkedPriceBuffer());
+    }
+
+    @Test
+    void append_shouldMoveRunToInProgress() {
+        //act
+        boolean appended = batchRun.append(PRICES);
+
+        //assert
+        assertTrue(appended);
+        assertEquals(Status.IN_PROGRESS, batchRun.getStatus());
+    }
+
+    @Test
+    void seal_shouldRejectFurtherAppendsAndFurtherSeals() {
+        //act
+        boolean sealed = batchRun.seal();
+
+        //assert
+        assertTrue(sealed);
+        assertEquals(Status.SEALING, batchRun.getStatus());
+        assertFalse(batchRun.append(PRICES));
+        assertFalse(batchRun.seal());
+        assertFalse(batchRun.close(Status.CANCELED));
+    }
+
+    @Test
+    void drainSealed_shouldReturnAppendedPricesAndFinishRun() {
+        //arrange
+        batchRun.append(PRICES);
+        batchRun.seal();
+
+        //act
+        Iterator<List<Price>> drained = batchRun.drainSealed();
+
+        //assert
+        assertEquals(PRICES, drained.next());
+        assertFalse(drained.hasNext());
+        assertEquals(Status.FINISHED, batchRun.getStatus());
+    }
+
+    @Test
+    void drainSealed_withNotSealedRun_shouldThrowException() {
+        assertThrows(IllegalStateException.class, () -> batchRun.drainSealed());
+    }
+
+    @Test
+    void close_shouldRejectFurtherAppends() {
+        //act
+        boolean closed = batchRun.close(Status.EXPIRED);
+
+        //assert
+        assertTrue(closed);
+        assertEquals(Status.EXPIRED, batchRun.getStatus());
+        assertFalse(batchRun.append(PRICES));
+    }
+}
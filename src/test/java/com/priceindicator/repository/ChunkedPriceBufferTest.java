@@ -0,0 +1,112 @@
+package com.priceindicator.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PricePayload;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ChunkedPriceBufferTest {
+
+    private ChunkedPriceBuffer buffer;
+    private final int coresNumber = Runtime.getRuntime().availableProcessors();
+
+    @BeforeEach
+    void setUp() {
+        buffer = new ChunkedPriceBuffer();
+    }
+
+    @Test
+    void add_shouldKeepAllPricesAddedConcurrently() throws InterruptedException {
+        //arrange
+        ExecutorService executorService = Executors.newFixedThreadPool(coresNumber);
+        Set<Price> published = new HashSet<>();
+
+        //act
+        for (int j = 0; j < 50; j++) {
+            List<Price> prices = createPrices(100);
+            published.addAll(prices);
+            executorService.execute(() -> buffer.add(prices));
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(2, TimeUnit.SECONDS);
+
+        //assert
+        assertEquals(5000, buffer.size());
+        List<Price> drained = buffer.drain();
+        assertEquals(5000, drained.size());
+        assertEquals(published, new HashSet<>(drained));
+    }
+
+    @Test
+    void add_shouldNotBeAffectedByChangesOfPublishedList() {
+        //arrange
+        List<Price> prices = createPrices(10);
+
+        //act
+        buffer.add(prices);
+        prices.clear();
+
+        //assert
+        assertEquals(10, buffer.drain().size());
+    }
+
+    @Test
+    void drain_shouldEmptyBuffer() {
+        //arrange
+        buffer.add(createPrices(10));
+
+        //act
+        buffer.drain();
+
+        //assert
+        assertTrue(buffer.drain().isEmpty());
+    }
+
+    @Test
+    void drainChunks_shouldReleaseChunksAsTheyAreConsumed() {
+        //arrange
+        List<Price> first = createPrices(10);
+        List<Price> second = createPrices(5);
+        buffer.add(first);
+        buffer.add(second);
+
+        //act
+        Iterator<List<Price>> chunks = buffer.drainChunks();
+        List<Price> drained = new ArrayList<>(chunks.next());
+
+        //assert
+        assertEquals(15 - drained.size(), buffer.size());
+        drained.addAll(chunks.next());
+        assertFalse(chunks.hasNext());
+        assertEquals(0, buffer.size());
+        Set<Price> published = new HashSet<>(first);
+        published.addAll(second);
+        assertEquals(published, new HashSet<>(drained));
+    }
+
+    private List<Price> createPrices(int count) {
+        List<Price> prices = new ArrayList<>();
+        IntStream.range(0, count).forEach(number -> prices.add(Price.builder()
+            .id(InstrumentId.of(UUID.randomUUID().toString()))
+            .asOf(LocalDateTime.now())
+            .payload(PricePayload.of("payload " + number))
+            .build()));
+        return prices;
+    }
+}
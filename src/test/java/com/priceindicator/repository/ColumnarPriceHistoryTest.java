@@ -0,0 +1,203 @@
+package com.priceindicator.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PricePayload;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ColumnarPriceHistoryTest {
+
+    private static final InstrumentId INSTRUMENT_ID = InstrumentId.of("instrumentId");
+
+    private ColumnarPriceHistory history;
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @BeforeEach
+    void setUp() {
+        history = new ColumnarPriceHistory(INSTRUMENT_ID);
+    }
+
+    @Test
+    void add_withSameAsOf_shouldKeepOnePrice() {
+        //act
+        history.add(createPrice(now, "payload"));
+        history.add(createPrice(now, "another payload"));
+
+        //assert
+        assertEquals(1, history.size());
+    }
+
+    @Test
+    void add_withPricesOutOfOrder_shouldKeepThemOrderedByAsOf() {
+        //arrange
+        List<Integer> hours = List.of(5, 1, 9, 0, 3, 7, 2, 8, 4, 6);
+
+        //act
+        hours.forEach(hour -> history.add(createPrice(now.minusHours(hour), "payload " + hour)));
+
+        //assert
+        List<Price> prices = history.range(now.minusDays(1), now);
+        assertEquals(10, prices.size());
+        IntStream.range(0, 10).forEach(index -> {
+            assertEquals(now.minusHours(9 - index), prices.get(index).getAsOf());
+            assertEquals(PricePayload.of("payload " + (9 - index)), prices.get(index).getPayload());
+            assertEquals(INSTRUMENT_ID, prices.get(index).getId());
+        });
+    }
+
+    @Test
+    void addAll_withSortedPrices_shouldMergeThemWithExistingPrices() {
+        //arrange
+        history.add(createPrice(now.minusHours(2), "existing payload"));
+        List<Price> prices = IntStream.of(3, 2, 1)
+            .mapToObj(hour -> createPrice(now.minusHours(hour), "payload " + hour))
+            .collect(Collectors.toList());
+
+        //act
+        history.addAll(prices);
+
+        //assert
+        assertEquals(3, history.size());
+        assertEquals(List.of(PricePayload.of("payload 3"), PricePayload.of("existing payload"), PricePayload.of("payload 1")),
+            history.range(now.minusDays(1), now).stream().map(Price::getPayload).collect(Collectors.toList()));
+    }
+
+    @Test
+    void floor_shouldReturnLatestPriceNotAfterAsOf() {
+        //arrange
+        IntStream.range(0, 10).forEach(number -> history.add(createPrice(now.minusHours(number), "payload " + number)));
+
+        //act && assert
+        assertEquals(PricePayload.of("payload 3"), history.floor(now.minusHours(2).minusMinutes(30)).get().getPayload());
+        assertEquals(PricePayload.of("payload 3"), history.floor(now.minusHours(3)).get().getPayload());
+        assertEquals(PricePayload.of("payload 0"), history.floor(now.plusDays(1)).get().getPayload());
+        assertTrue(history.floor(now.minusHours(10)).isEmpty());
+    }
+
+    @Test
+    void range_shouldReturnPricesWithinInclusiveRangeInTimeOrder() {
+        //arrange
+        IntStream.range(0, 10).forEach(number -> history.add(createPrice(now.minusHours(number), "payload " + number)));
+
+        //act
+        List<Price> prices = history.range(now.minusHours(5), now.minusHours(3));
+
+        //assert
+        assertEquals(List.of(now.minusHours(5), now.minusHours(4), now.minusHours(3)),
+            prices.stream().map(Price::getAsOf).collect(Collectors.toList()));
+    }
+
+    @Test
+    void range_withBoundsOutOfNanosRange_shouldClampThem() {
+        //arrange
+        Price price = createPrice(LocalDateTime.of(2024, 1, 1, 0, 0), "payload");
+        history.add(price);
+
+        //act && assert
+        assertEquals(List.of(price), history.range(LocalDateTime.of(1500, 1, 1, 0, 0), LocalDateTime.of(3000, 1, 1, 0, 0)));
+        assertEquals(List.of(price), history.range(LocalDateTime.MIN, LocalDateTime.MAX));
+        assertEquals(Optional.of(price), history.floor(LocalDateTime.of(3000, 1, 1, 0, 0)));
+        assertTrue(history.floor(LocalDateTime.of(1500, 1, 1, 0, 0)).isEmpty());
+        assertTrue(history.range(LocalDateTime.of(2500, 1, 1, 0, 0), LocalDateTime.MAX).isEmpty());
+    }
+
+    @Test
+    void add_withAsOfOutOfNanosRange_shouldRejectPrice() {
+        //act && assert
+        assertThrows(IllegalArgumentException.class, () -> history.add(createPrice(LocalDateTime.of(3000, 1, 1, 0, 0), "payload")));
+        assertThrows(IllegalArgumentException.class,
+            () -> history.addAll(List.of(createPrice(LocalDateTime.of(1500, 1, 1, 0, 0), "payload"))));
+        assertEquals(0, history.size());
+    }
+
+    @Test
+    void retainLast_shouldKeepNewestPricesAndTheirPayloads() {
+        //arrange
+        IntStream.range(0, 1000).forEach(number -> history.add(createPrice(now.plusSeconds(number), "payload ü " + number)));
+
+        //act
+        history.retainLast(10);
+        history.add(createPrice(now.plusSeconds(1000), "payload ü 1000"));
+
+        //assert
+        assertEquals(11, history.size());
+        List<Price> prices = history.range(now, now.plusSeconds(1000));
+        IntStream.range(0, 11).forEach(index ->
+            assertEquals(PricePayload.of("payload ü " + (990 + index)), prices.get(index).getPayload()));
+    }
+
+    @Test
+    void retainFrom_shouldEvictOnlyOlderPrices() {
+        //arrange
+        IntStream.range(0, 10).forEach(number -> history.add(createPrice(now.minusHours(number), "payload " + number)));
+
+        //act
+        history.retainFrom(now.minusHours(3));
+
+        //assert
+        assertEquals(4, history.size());
+        assertTrue(history.floor(now.minusHours(4)).isEmpty());
+    }
+
+    @Test
+    void compressIfIdle_shouldCompressOnlyHistoryNotAccessedSinceTheLastCall() {
+        //arrange
+        IntStream.range(0, 100).forEach(number -> history.add(createPrice(now.plusSeconds(number), "{\"bid\":" + number + "}")));
+
+        //act
+        long savedWhileAccessed = history.compressIfIdle();
+        long savedWhileIdle = history.compressIfIdle();
+
+        //assert
+        assertEquals(0, savedWhileAccessed);
+        assertTrue(savedWhileIdle > 0);
+        assertEquals(savedWhileIdle, history.compressIfIdle());
+    }
+
+    @Test
+    void floor_onCompressedHistory_shouldDecompressItAgain() {
+        //arrange
+        IntStream.range(0, 100).forEach(number -> history.add(createPrice(now.plusSeconds(number), "{\"bid\":" + number + "}")));
+        history.compressIfIdle();
+        history.compressIfIdle();
+
+        //act
+        Optional<Price> price = history.floor(now.plusSeconds(50));
+
+        //assert
+        assertEquals(PricePayload.of("{\"bid\":50}"), price.get().getPayload());
+        assertEquals(0, history.compressIfIdle());
+    }
+
+    @Test
+    void add_onCompressedHistory_shouldKeepAllPayloads() {
+        //arrange
+        IntStream.range(0, 100).forEach(number -> history.add(createPrice(now.plusSeconds(number), "payload " + number)));
+        history.compressIfIdle();
+        history.compressIfIdle();
+
+        //act
+        history.retainLast(50);
+        history.add(createPrice(now.plusSeconds(100), "payload 100"));
+
+        //assert
+        List<Price> prices = history.range(now, now.plusSeconds(100));
+        assertEquals(51, prices.size());
+        IntStream.range(0, 51).forEach(index ->
+            assertEquals(PricePayload.of("payload " + (50 + index)), prices.get(index).getPayload()));
+    }
+
+    private Price createPrice(LocalDateTime asOf, String payload) {
+        return Price.builder().id(INSTRUMENT_ID).asOf(asOf).payload(PricePayload.of(payload)).build();
+    }
+}
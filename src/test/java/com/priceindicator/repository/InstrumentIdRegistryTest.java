@@ -0,0 +1,70 @@
+package com.priceindicator.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.priceindicator.domain.InstrumentId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class InstrumentIdRegistryTest {
+
+    private InstrumentIdRegistry registry;
+    private final int coresNumber = Runtime.getRuntime().availableProcessors();
+
+    @BeforeEach
+    void setUp() {
+        registry = new InstrumentIdRegistry();
+    }
+
+    @Test
+    void register_shouldAssignDenseIndexesOncePerInstrumentWhenCalledConcurrently() throws InterruptedException {
+        //arrange
+        int idsCount = 5000;
+        List<InstrumentId> ids = new ArrayList<>();
+        IntStream.range(0, idsCount).forEach(number -> ids.add(InstrumentId.of(UUID.randomUUID().toString())));
+        Set<Integer> indexes = ConcurrentHashMap.newKeySet();
+        ExecutorService executorService = Executors.newFixedThreadPool(coresNumber);
+
+        //act
+        for (int j = 0; j < 4; j++) {
+            executorService.execute(() -> ids.forEach(id -> indexes.add(registry.register(InstrumentId.of(id.getInstrumentId())))));
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(2, TimeUnit.SECONDS);
+
+        //assert
+        assertEquals(idsCount, registry.size());
+        assertEquals(new HashSet<>(IntStream.range(0, idsCount).boxed().collect(Collectors.toList())), indexes);
+        ids.forEach(id -> assertEquals(id, registry.instrumentAt(registry.indexOf(id))));
+    }
+
+    @Test
+    void instrumentAt_shouldReturnFirstRegisteredInstance() {
+        //arrange
+        InstrumentId instrumentId = InstrumentId.of("id");
+
+        //act
+        int index = registry.register(instrumentId);
+
+        //assert
+        assertEquals(index, registry.register(InstrumentId.of("id")));
+        assertSame(instrumentId, registry.instrumentAt(index));
+    }
+
+    @Test
+    void indexOf_withNotRegisteredInstrument_shouldReturnUnknown() {
+        assertEquals(InstrumentIdRegistry.UNKNOWN, registry.indexOf(InstrumentId.of("id")));
+    }
+}
@@ -1,24 +1,45 @@
 package com.priceindicator.repository;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.priceindicator.domain.InstrumentId;
 import com.priceindicator.domain.Price;
 import com.priceindicator.domain.PricePayload;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.springframework.test.util.ReflectionTestUtils;
 
 class LastPriceRepositoryTest {
 
     private LastPriceRepository repository;
 
+    @TempDir
+    Path directory;
+
     @BeforeEach
     void setUp() {
         repository = new LastPriceRepository();
@@ -41,7 +62,7 @@ class LastPriceRepositoryTest {
         Price newPrice = Price.builder()
             .id(targetInstrumentId)
             .asOf(LocalDateTime.now())
-            .payload(PricePayload.of("payload"))
+            .payload(PricePayload.of("newPayload"))
             .build();
         Map<InstrumentId, Price> prices = new HashMap<>();
         prices.put(price.getId(), price);
@@ -49,11 +70,64 @@ class LastPriceRepositoryTest {
         repository.addPrices(prices);
 
         //act && assert
-        Map<InstrumentId, Price> repoPricesMap = getRepoPricesMap();
-        assertSame(price, repoPricesMap.get(targetInstrumentId));
-        assertSame(price1, repoPricesMap.get(price1.getId()));
+        assertSame(price, getRepoPrice(repository, targetInstrumentId));
+        assertSame(price1, getRepoPrice(repository, price1.getId()));
         repository.addPrices(Collections.singletonMap(targetInstrumentId, newPrice));
-        assertSame(newPrice, repoPricesMap.get(targetInstrumentId));
+        assertSame(newPrice, getRepoPrice(repository, targetInstrumentId));
+    }
+
+    @Test
+    void addPrices_withOlderPrice_shouldKeepNewerPrice() {
+        //arrange
+        InstrumentId instrumentId = InstrumentId.of("instrumentId");
+        Price nowPrice = Price.builder()
+            .id(instrumentId)
+            .asOf(LocalDateTime.now())
+            .payload(PricePayload.of("now payload"))
+            .build();
+        Price hourAgoPrice = Price.builder()
+            .id(instrumentId)
+            .asOf(LocalDateTime.now().minusHours(1))
+            .payload(PricePayload.of("hour ago payload"))
+            .build();
+        repository.addPrices(Collections.singletonMap(instrumentId, nowPrice));
+
+        //act
+        repository.addPrices(Collections.singletonMap(instrumentId, hourAgoPrice));
+
+        //assert
+        assertSame(nowPrice, getRepoPrice(repository, instrumentId));
+    }
+
+    @Test
+    void forEachPrice_shouldNeverSeePartiallyAddedRun() throws InterruptedException {
+        //arrange
+        List<InstrumentId> instrumentIds = new ArrayList<>();
+        IntStream.range(0, 100).forEach(number -> instrumentIds.add(InstrumentId.of("id " + number)));
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicBoolean mixedRuns = new AtomicBoolean(false);
+        LocalDateTime now = LocalDateTime.now();
+        repository.addPrices(createRun(instrumentIds, 0, now));
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                Set<PricePayload> payloads = new HashSet<>();
+                repository.forEachPrice(instrumentIds, (instrumentId, payload) -> payloads.add(payload));
+                if (payloads.size() != 1) {
+                    mixedRuns.set(true);
+                }
+            }
+        });
+        reader.start();
+
+        //act
+        for (int run = 1; run < 2000; run++) {
+            repository.addPrices(createRun(instrumentIds, run, now.plusSeconds(run)));
+        }
+        running.set(false);
+        reader.join();
+
+        //assert
+        assertFalse(mixedRuns.get());
     }
 
     @Test
@@ -99,8 +173,219 @@ class LastPriceRepositoryTest {
         assertSame(payload, priceById.get());
     }
 
+    @Test
+    void forEachPrice_shouldVisitOnlyExistingPrices() {
+        //arrange
+        InstrumentId instrumentId = InstrumentId.of("id");
+        PricePayload payload = PricePayload.of("payload");
+        Price newPrice = Price.builder()
+            .id(instrumentId)
+            .asOf(LocalDateTime.now())
+            .payload(payload)
+            .build();
+        repository.addPrices(Collections.singletonMap(instrumentId, newPrice));
+        Map<InstrumentId, PricePayload> visited = new HashMap<>();
+
+        //act
+        repository.forEachPrice(Arrays.asList(instrumentId, InstrumentId.of("notExistingId"), null), visited::put);
+
+        //assert
+        assertEquals(Map.of(instrumentId, payload), visited);
+    }
+
+    private Map<InstrumentId, Price> createRun(List<InstrumentId> instrumentIds, int run, LocalDateTime asOf) {
+        Map<InstrumentId, Price> prices = new HashMap<>();
+        PricePayload payload = PricePayload.of("run " + run);
+        instrumentIds.forEach(instrumentId -> prices.put(instrumentId,
+            Price.builder().id(instrumentId).asOf(asOf).payload(payload).build()));
+        return prices;
+    }
+
+    @Test
+    void loadSnapshot_shouldServeSnapshotPricesAndKeepNewerHeapPrices() throws IOException {
+        //arrange
+        LocalDateTime now = LocalDateTime.now();
+        Price snapshotPrice = createPrice("snapshotInstrumentId", now, "snapshot payload");
+        Price olderSnapshotPrice = createPrice("updatedInstrumentId", now.minusHours(1), "older payload");
+        Price newerPrice = createPrice("updatedInstrumentId", now, "newer payload");
+        Path file = directory.resolve("last-prices.snapshot");
+        LastPriceSnapshot.write(file, List.of(snapshotPrice, olderSnapshotPrice));
+        repository.addPrices(Map.of(newerPrice.getId(), newerPrice));
+
+        //act
+        CompletableFuture<Void> loaded = repository.loadSnapshot(LastPriceSnapshot.map(file));
+
+        //assert
+        assertEquals(Optional.of(snapshotPrice.getPayload()), repository.getPriceById(snapshotPrice.getId()));
+        assertEquals(Optional.of(newerPrice.getPayload()), repository.getPriceById(newerPrice.getId()));
+        loaded.join();
+        assertEquals(snapshotPrice, getRepoPrice(repository, snapshotPrice.getId()));
+        assertEquals(newerPrice, getRepoPrice(repository, newerPrice.getId()));
+    }
+
+    @Test
+    void writeSnapshot_shouldWriteAllLastPrices() throws IOException {
+        //arrange
+        LocalDateTime now = LocalDateTime.now();
+        Map<InstrumentId, Price> prices = new HashMap<>();
+        IntStream.range(0, 100).forEach(number -> {
+            Price price = createPrice("instrumentId " + number, now, "payload " + number);
+            prices.put(price.getId(), price);
+        });
+        repository.addPrices(prices);
+        Path file = directory.resolve("last-prices.snapshot");
+
+        //act
+        repository.writeSnapshot(file);
+
+        //assert
+        LastPriceRepository restarted = new LastPriceRepository();
+        restarted.loadSnapshot(LastPriceSnapshot.map(file)).join();
+        prices.forEach((instrumentId, price) -> assertEquals(price, getRepoPrice(restarted, instrumentId)));
+    }
+
+    @Test
+    void addPrices_shouldNotifyListenersOnlyAboutChangedPrices() {
+        //arrange
+        LocalDateTime now = LocalDateTime.now();
+        Price current = createPrice("instrumentId", now, "current");
+        repository.addPrices(Map.of(current.getId(), current));
+        List<List<Price>> notifications = new ArrayList<>();
+        repository.addChangeListener(notifications::add);
+        Price older = createPrice("instrumentId", now.minusSeconds(1), "older");
+        Price added = createPrice("anotherInstrumentId", now, "added");
+
+        //act
+        repository.addPrices(Map.of(older.getId(), older, added.getId(), added));
+
+        //assert
+        assertEquals(List.of(List.of(added)), notifications);
+    }
+
+    @Test
+    void forEachPrice_shouldVisitOffHeapPrices() {
+        //arrange
+        LastPriceRepository offHeapRepository = new LastPriceRepository(new InstrumentIdRegistry(), LastPriceRepository.Store.OFF_HEAP);
+        Price price = createPrice("instrumentId", LocalDateTime.now(), "payload");
+        offHeapRepository.addPrices(Map.of(price.getId(), price));
+        Map<InstrumentId, PricePayload> visited = new HashMap<>();
+
+        //act
+        int found = offHeapRepository.forEachPrice(List.of(price.getId(), InstrumentId.of("unknown")), visited::put);
+
+        //assert
+        assertEquals(1, found);
+        assertEquals(Map.of(price.getId(), price.getPayload()), visited);
+        assertEquals(Optional.of(price.getPayload()), offHeapRepository.getPriceById(price.getId()));
+    }
+
+    @Test
+    void addPrices_withSamePayload_shouldNotNotifyListenersAndMoveAsOfForward() {
+        //arrange
+        LocalDateTime now = LocalDateTime.now();
+        Price current = createPrice("instrumentId", now, "payload");
+        repository.addPrices(Map.of(current.getId(), current));
+        List<List<Price>> notifications = new ArrayList<>();
+        repository.addChangeListener(notifications::add);
+        Price republished = createPrice("instrumentId", now.plusSeconds(2), "payload");
+        Price late = createPrice("instrumentId", now.plusSeconds(1), "late");
+
+        //act
+        repository.addPrices(Map.of(republished.getId(), republished));
+        repository.addPrices(Map.of(late.getId(), late));
+
+        //assert
+        assertTrue(notifications.isEmpty());
+        assertEquals(republished, getRepoPrice(repository, current.getId()));
+        assertSame(current.getPayload(), getRepoPrice(repository, current.getId()).getPayload());
+        assertEquals(1, repository.writtenPrices());
+        assertEquals(1, repository.deduplicatedPrices());
+    }
+
+    @Test
+    void addPrices_withFailingMerge_shouldDropFailedRunAndKeepServingReads() {
+        //arrange
+        LocalDateTime now = LocalDateTime.now();
+        Price current = createPrice("instrumentId", now, "payload");
+        Price broken = createPrice("anotherInstrumentId", now, "payload");
+        repository.addPrices(Map.of(current.getId(), current, broken.getId(), broken));
+        Map<InstrumentId, Price> failingRun = new LinkedHashMap<>();
+        failingRun.put(current.getId(), createPrice("instrumentId", now.plusSeconds(1), "failed run"));
+        failingRun.put(broken.getId(), createPrice("anotherInstrumentId", null, "failed run"));
+        Price next = createPrice("anotherInstrumentId", now.plusSeconds(2), "next run");
+
+        //act
+        assertThrows(NullPointerException.class, () -> repository.addPrices(failingRun));
+        repository.addPrices(Map.of(next.getId(), next));
+
+        //assert
+        assertEquals(Optional.of(current.getPayload()), repository.getPriceById(current.getId()));
+        assertEquals(Optional.of(next.getPayload()), repository.getPriceById(next.getId()));
+    }
+
+    @ParameterizedTest
+    @EnumSource(LastPriceRepository.Store.class)
+    void addPrices_withFailingMerge_shouldRestorePricesChangedByFailedRun(LastPriceRepository.Store store) {
+        //arrange
+        LastPriceRepository storeRepository = new LastPriceRepository(new InstrumentIdRegistry(), store);
+        LocalDateTime now = LocalDateTime.now();
+        List<Price> current = List.of(
+            createPrice("samePayload", now, "payload"),
+            createPrice("inPlace", now, "payload"),
+            createPrice("moved", now, "payload"),
+            createPrice("broken", now, "payload"));
+        Map<InstrumentId, Price> currentRun = new LinkedHashMap<>();
+        current.forEach(price -> currentRun.put(price.getId(), price));
+        storeRepository.addPrices(currentRun);
+        Map<InstrumentId, Price> failingRun = new LinkedHashMap<>();
+        List.of(
+            createPrice("samePayload", now.plusSeconds(1), "payload"),
+            createPrice("inPlace", now.plusSeconds(1), "failed"),
+            createPrice("moved", now.plusSeconds(1), "failed run payload which does not fit into the slot of the current one"),
+            createPrice("new", now.plusSeconds(1), "failed"),
+            createPrice("broken", null, "failed"))
+            .forEach(price -> failingRun.put(price.getId(), price));
+        Price next = createPrice("next", now.plusSeconds(2), "next run");
+
+        //act
+        assertThrows(NullPointerException.class, () -> storeRepository.addPrices(failingRun));
+        storeRepository.addPrices(Map.of(next.getId(), next));
+
+        //assert
+        current.forEach(price -> assertEquals(price, getRepoPrice(storeRepository, price.getId())));
+        assertEquals(Optional.empty(), storeRepository.getPriceById(InstrumentId.of("new")));
+        assertEquals(Optional.of(next.getPayload()), storeRepository.getPriceById(next.getId()));
+    }
+
+    @Test
+    void addPrices_withFailingMergeOffHeap_shouldNotBlockReaders() throws Exception {
+        //arrange
+        LastPriceRepository offHeapRepository = new LastPriceRepository(new InstrumentIdRegistry(), LastPriceRepository.Store.OFF_HEAP);
+        LocalDateTime now = LocalDateTime.now();
+        Price current = createPrice("instrumentId", now, "payload");
+        offHeapRepository.addPrices(Map.of(current.getId(), current));
+        Price failing = createPrice("instrumentId", null, "failed run");
+
+        //act
+        assertThrows(NullPointerException.class, () -> offHeapRepository.addPrices(Map.of(failing.getId(), failing)));
+        CompletableFuture<Optional<PricePayload>> read =
+            CompletableFuture.supplyAsync(() -> offHeapRepository.getPriceById(current.getId()));
+
+        //assert
+        assertEquals(Optional.of(current.getPayload()), read.get(5, TimeUnit.SECONDS));
+    }
+
     //yes, I know it is hacky, but I believe it is better than return values only for tests
-    private Map<InstrumentId, Price> getRepoPricesMap() {
-        return (Map<InstrumentId, Price>) ReflectionTestUtils.getField(repository, "prices");
+    private Price getRepoPrice(LastPriceRepository repository, InstrumentId instrumentId) {
+        LastPriceStore prices = (LastPriceStore) ReflectionTestUtils.getField(repository, "prices");
+        return prices.get(instrumentId);
+    }
+
+    private static Price createPrice(String instrumentId, LocalDateTime asOf, String payload) {
+        return Price.builder()
+            .id(InstrumentId.of(instrumentId))
+            .asOf(asOf)
+            .payload(PricePayload.of(payload))
+            .build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,78 @@
+package com.priceindicator.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PricePayload;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LastPriceSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @Test
+    void get_shouldReturnWrittenPrices() throws IOException {
+        //arrange
+        List<Price> prices = IntStream.range(0, 1000)
+            .mapToObj(number -> createPrice("instrument " + number, now.minusSeconds(number), "payload " + number))
+            .collect(Collectors.toList());
+        Path file = directory.resolve("last-prices.snapshot");
+        LastPriceSnapshot.write(file, prices);
+
+        //act
+        LastPriceSnapshot snapshot = LastPriceSnapshot.map(file);
+
+        //assert
+        assertEquals(1000, snapshot.size());
+        prices.forEach(price -> assertEquals(price, snapshot.get(price.getId())));
+        assertNull(snapshot.get(InstrumentId.of("unknown")));
+    }
+
+    @Test
+    void get_withSameIdHashes_shouldReturnPriceOfRequestedInstrument() throws IOException {
+        //arrange
+        //"Aa" and "BB" have the same String hash code
+        Price firstPrice = createPrice("Aa", now, "first payload");
+        Price secondPrice = createPrice("BB", now.minusHours(1), "second payload");
+        Path file = directory.resolve("last-prices.snapshot");
+        LastPriceSnapshot.write(file, List.of(firstPrice, secondPrice));
+
+        //act
+        LastPriceSnapshot snapshot = LastPriceSnapshot.map(file);
+
+        //assert
+        assertEquals(firstPrice, snapshot.get(InstrumentId.of("Aa")));
+        assertEquals(secondPrice, snapshot.get(InstrumentId.of("BB")));
+    }
+
+    @Test
+    void map_withNotSnapshotFile_shouldThrowException() throws IOException {
+        //arrange
+        Path file = Files.write(directory.resolve("other.file"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        //act && assert
+        assertThrows(IOException.class, () -> LastPriceSnapshot.map(file));
+    }
+
+    private static Price createPrice(String instrumentId, LocalDateTime asOf, String payload) {
+        return Price.builder()
+            .id(InstrumentId.of(instrumentId))
+            .asOf(asOf)
+            .payload(PricePayload.of(payload))
+            .build();
+    }
+}
@@ -0,0 +1,112 @@
+package com.priceindicator.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PricePayload;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LatestPriceBufferTest {
+
+    private LatestPriceBuffer buffer;
+    private final int coresNumber = Runtime.getRuntime().availableProcessors();
+
+    @BeforeEach
+    void setUp() {
+        buffer = new LatestPriceBuffer();
+    }
+
+    @Test
+    void add_shouldKeepLatestPricePerInstrumentWhenAddedConcurrently() throws InterruptedException {
+        //arrange
+        int idsCount = 10;
+        List<InstrumentId> ids = new ArrayList<>();
+        IntStream.range(0, idsCount).forEach(number -> ids.add(InstrumentId.of(UUID.randomUUID().toString())));
+        Map<InstrumentId, Price> expected = new HashMap<>();
+        Random random = new Random();
+        LocalDateTime now = LocalDateTime.now();
+        ExecutorService executorService = Executors.newFixedThreadPool(coresNumber);
+
+        //act
+        for (int j = 0; j < 50; j++) {
+            List<Price> prices = new ArrayList<>();
+            IntStream.range(0, 100).forEach(number -> {
+                Price price = Price.builder()
+                    .id(ids.get(random.nextInt(idsCount)))
+                    .asOf(now.minusSeconds(random.nextInt(1_000_000)))
+                    .payload(PricePayload.of("payload " + number))
+                    .build();
+                prices.add(price);
+                expected.merge(price.getId(), price,
+                    (current, incoming) -> incoming.getAsOf().isAfter(current.getAsOf()) ? incoming : current);
+            });
+            executorService.execute(() -> buffer.add(prices));
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(2, TimeUnit.SECONDS);
+
+        //assert
+        assertEquals(idsCount, buffer.size());
+        Map<InstrumentId, LocalDateTime> drained = buffer.drain().stream()
+            .collect(Collectors.toMap(Price::getId, Price::getAsOf));
+        expected.forEach((instrumentId, price) -> assertEquals(price.getAsOf(), drained.get(instrumentId)));
+    }
+
+    @Test
+    void drainChunks_shouldRemovePricesInChunks() {
+        //arrange
+        LocalDateTime now = LocalDateTime.now();
+        List<Price> prices = IntStream.range(0, 1500)
+            .mapToObj(number -> Price.builder()
+                .id(InstrumentId.of("instrument " + number))
+                .asOf(now)
+                .payload(PricePayload.of("payload " + number))
+                .build())
+            .collect(Collectors.toList());
+        buffer.add(prices);
+
+        //act
+        Iterator<List<Price>> chunks = buffer.drainChunks();
+        List<Price> firstChunk = chunks.next();
+
+        //assert
+        assertEquals(1500 - firstChunk.size(), buffer.size());
+        List<Price> drained = new ArrayList<>(firstChunk);
+        chunks.forEachRemaining(drained::addAll);
+        assertEquals(new HashSet<>(prices), new HashSet<>(drained));
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void drain_shouldEmptyBuffer() {
+        //arrange
+        buffer.add(List.of(Price.builder()
+            .id(InstrumentId.of(UUID.randomUUID().toString()))
+            .asOf(LocalDateTime.now())
+            .payload(PricePayload.of("payload"))
+            .build()));
+
+        //act
+        buffer.drain();
+
+        //assert
+        assertTrue(buffer.drain().isEmpty());
+    }
+}
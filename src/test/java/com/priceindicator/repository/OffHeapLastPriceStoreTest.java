@@ -0,0 +1,183 @@
+package com.priceindicator.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PricePayload;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class OffHeapLastPriceStoreTest {
+
+    private final LocalDateTime now = LocalDateTime.of(2024, 1, 1, 10, 0, 0, 123_456_789);
+    private final InstrumentIdRegistry registry = new InstrumentIdRegistry();
+    private OffHeapLastPriceStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new OffHeapLastPriceStore(registry);
+    }
+
+    @Test
+    void merge_shouldKeepLatestPrice() {
+        //arrange
+        Price price = createPrice("instrumentId", now, "current");
+        Price older = createPrice("instrumentId", now.minusNanos(1), "older");
+
+        //act
+        LastPriceStore.MergeResult mergedPrice = merge(price);
+        LastPriceStore.MergeResult mergedOlder = merge(older);
+        store.publish();
+
+        //assert
+        assertEquals(LastPriceStore.MergeResult.CHANGED, mergedPrice);
+        assertEquals(LastPriceStore.MergeResult.OLDER, mergedOlder);
+        assertEquals(price, store.get(price.getId()));
+    }
+
+    @Test
+    void merge_shouldOverwriteShorterPayloadsInPlaceAndMoveLongerOnes() {
+        //arrange
+        InstrumentId instrumentId = InstrumentId.of("instrumentId");
+        Price neighbour = createPrice("neighbour", now, "n".repeat(20));
+        merge(createPrice("instrumentId", now, "p".repeat(20)));
+        merge(neighbour);
+        store.publish();
+
+        //act
+        merge(createPrice("instrumentId", now.plusSeconds(1), ""));
+        store.publish();
+        Price shorter = store.get(instrumentId);
+        Price longer = createPrice("instrumentId", now.plusSeconds(2), "l".repeat(100));
+        merge(longer);
+        store.publish();
+
+        //assert
+        assertEquals(PricePayload.of(""), shorter.getPayload());
+        assertEquals(longer, store.get(instrumentId));
+        assertEquals(neighbour, store.get(neighbour.getId()));
+    }
+
+    @Test
+    void merge_withSamePayload_shouldOnlyMoveAsOfForward() {
+        //arrange
+        Price price = createPrice("instrumentId", now, "payload");
+        Price republished = createPrice("instrumentId", now.plusSeconds(1), "payload");
+        merge(price);
+        store.publish();
+
+        //act
+        LastPriceStore.MergeResult result = merge(republished);
+        store.publish();
+
+        //assert
+        assertEquals(LastPriceStore.MergeResult.SAME_PAYLOAD, result);
+        assertEquals(republished, store.get(price.getId()));
+    }
+
+    @Test
+    void merge_shouldKeepPayloadsLargerThanSlab() {
+        //arrange
+        Price large = createPrice("instrumentId", now, "x".repeat(OffHeapLastPriceStore.SLAB_SIZE + 1));
+        Price small = createPrice("instrumentId", now.plusSeconds(1), "small");
+
+        //act
+        merge(large);
+        store.publish();
+        Price storedLarge = store.get(large.getId());
+        merge(small);
+        store.publish();
+
+        //assert
+        assertEquals(large, storedLarge);
+        assertEquals(small, store.get(small.getId()));
+    }
+
+    @Test
+    void forEach_shouldVisitNullForMissingPrices() {
+        //arrange
+        Price price = createPrice("instrumentId", now, "payload");
+        merge(price);
+        store.publish();
+        Map<InstrumentId, Price> visited = new HashMap<>();
+
+        //act
+        store.forEach(List.of(price.getId(), InstrumentId.of("unknown")), visited::put);
+
+        //assert
+        assertEquals(price, visited.get(price.getId()));
+        assertTrue(visited.containsKey(InstrumentId.of("unknown")));
+        assertNull(visited.get(InstrumentId.of("unknown")));
+    }
+
+    @Test
+    void prices_shouldReturnAllPrices() {
+        //arrange
+        Price price = createPrice("instrumentId", now, "payload");
+        Price price1 = createPrice("anotherInstrumentId", now, "payload1");
+        merge(price);
+        merge(price1);
+        store.publish();
+
+        //act
+        List<Price> prices = store.prices();
+
+        //assert
+        assertEquals(new HashSet<>(List.of(price, price1)), new HashSet<>(prices));
+    }
+
+    @Test
+    void get_shouldNeverSeeTornPrices() {
+        //arrange
+        InstrumentId instrumentId = InstrumentId.of("instrumentId");
+        merge(createPrice("instrumentId", now, payloadOf(0)));
+        store.publish();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CompletableFuture<Boolean> reader = CompletableFuture.supplyAsync(() -> {
+            while (running.get()) {
+                Price price = store.get(instrumentId);
+                long second = price.getAsOf().getSecond() + price.getAsOf().getMinute() * 60L;
+                if (!price.getPayload().equals(PricePayload.of(payloadOf(second)))) {
+                    return false;
+                }
+            }
+            return true;
+        });
+
+        //act
+        for (int second = 1; second < 3_000; second++) {
+            merge(createPrice("instrumentId", now.withSecond(0).plusSeconds(second), payloadOf(second)));
+            store.publish();
+        }
+        running.set(false);
+
+        //assert
+        assertTrue(reader.join());
+    }
+
+    private LastPriceStore.MergeResult merge(Price price) {
+        return store.merge(registry.register(price.getId()), price);
+    }
+
+    private static String payloadOf(long second) {
+        return "p".repeat((int) (second % 50)) + second;
+    }
+
+    private static Price createPrice(String instrumentId, LocalDateTime asOf, String payload) {
+        return Price.builder()
+            .id(InstrumentId.of(instrumentId))
+            .asOf(asOf)
+            .payload(PricePayload.of(payload))
+            .build();
+    }
+}
@@ -4,11 +4,14 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import com.priceindicator.concurrent.ConcurrentPagedArray;
 import com.priceindicator.domain.Price;
 import com.priceindicator.domain.InstrumentId;
 import com.priceindicator.domain.PricePayload;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -16,12 +19,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
-import java.util.Set;
-import java.util.SortedSet;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
@@ -74,10 +77,10 @@ class PriceRepositoryTest {
         executorService.awaitTermination(6, TimeUnit.SECONDS);
 
         //assert
-        Map<InstrumentId, SortedSet<Price>> repoPricesMap = getRepoPricesMap(repository);
+        Map<InstrumentId, PriceHistory> repoPricesMap = getRepoPricesMap(repository);
 
         assertEquals(idsCount, repoPricesMap.size());
-        assertEquals(pricesCount, repoPricesMap.values().stream().mapToInt(Set::size).sum());
+        assertEquals(pricesCount, repoPricesMap.values().stream().mapToInt(PriceHistory::size).sum());
         repoPricesMap.forEach((instrumentId, pricesSet) -> assertEquals(pricesSet.size(), instrumentsCount.get(instrumentId)));
     }
 
@@ -103,13 +106,199 @@ class PriceRepositoryTest {
             .build();
 
         repository.addPrices(List.of(yesterdayPrice, nowPrice, hourAgoPrice));
-        ArgumentCaptor<Map<InstrumentId, Price>> argumentCaptor = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<LatestPrices> argumentCaptor = ArgumentCaptor.forClass(LatestPrices.class);
 
         //act
         verify(lastPriceRepository).addPrices(argumentCaptor.capture());
 
         //assert
-        assertEquals(nowPrice, argumentCaptor.getValue().get(instrumentId));
+        assertEquals(nowPrice, toMap(argumentCaptor.getValue()).get(instrumentId));
+    }
+
+    @Test
+    void addPrices_shouldReleaseOnlyInstrumentsOfIncomingPrices() {
+        //arrange
+        Price previousRunPrice = Price.builder()
+            .id(InstrumentId.of(UUID.randomUUID().toString()))
+            .asOf(LocalDateTime.now())
+            .payload(PricePayload.of("Previous run price"))
+            .build();
+        Price currentRunPrice = Price.builder()
+            .id(InstrumentId.of(UUID.randomUUID().toString()))
+            .asOf(LocalDateTime.now())
+            .payload(PricePayload.of("Current run price"))
+            .build();
+        repository.addPrices(List.of(previousRunPrice));
+        ArgumentCaptor<LatestPrices> argumentCaptor = ArgumentCaptor.forClass(LatestPrices.class);
+
+        //act
+        repository.addPrices(List.of(currentRunPrice));
+
+        //assert
+        verify(lastPriceRepository, times(2)).addPrices(argumentCaptor.capture());
+        assertEquals(Map.of(currentRunPrice.getId(), currentRunPrice), toMap(argumentCaptor.getValue()));
+    }
+
+    @Test
+    void addPrices_withLargeRun_shouldMergeAllInstrumentsInParallel() {
+        //arrange
+        int instrumentsNumber = 100;
+        int pricesPerInstrument = PriceRepository.PARALLEL_MERGE_THRESHOLD / instrumentsNumber * 2;
+        LocalDateTime now = LocalDateTime.now();
+        List<InstrumentId> instrumentIds = new ArrayList<>();
+        IntStream.range(0, instrumentsNumber).forEach(number -> instrumentIds.add(InstrumentId.of(UUID.randomUUID().toString())));
+        List<Price> prices = new ArrayList<>();
+        //prices of an instrument are spread over the whole run and published out of time order
+        IntStream.range(0, pricesPerInstrument).forEach(number -> instrumentIds.forEach(instrumentId -> prices.add(Price.builder()
+            .id(instrumentId)
+            .asOf(now.minusSeconds((number * 7L) % pricesPerInstrument))
+            .payload(PricePayload.of("payload " + number))
+            .build())));
+        ArgumentCaptor<LatestPrices> argumentCaptor = ArgumentCaptor.forClass(LatestPrices.class);
+
+        //act
+        repository.addPrices(prices);
+
+        //assert
+        verify(lastPriceRepository).addPrices(argumentCaptor.capture());
+        assertEquals(instrumentsNumber, toMap(argumentCaptor.getValue()).size());
+        instrumentIds.forEach(instrumentId -> {
+            assertEquals(now, toMap(argumentCaptor.getValue()).get(instrumentId).getAsOf());
+            assertEquals(PricePayload.of("payload 0"), toMap(argumentCaptor.getValue()).get(instrumentId).getPayload());
+            assertEquals(pricesPerInstrument, getRepoPricesMap(repository).get(instrumentId).size());
+            assertEquals(PricePayload.of("payload 0"), repository.getPriceAsOf(instrumentId, now).get());
+        });
+    }
+
+    @Test
+    void addPrices_withLargeRunAndCountRetention_shouldKeepLastPricesPerInstrument() {
+        //arrange
+        repository = new PriceRepository(lastPriceRepository, new InstrumentIdRegistry(), HistoryRetention.keepLast(2), PriceRepository.HistoryStore.COLUMNAR);
+        InstrumentId instrumentId = InstrumentId.of(UUID.randomUUID().toString());
+        LocalDateTime now = LocalDateTime.now();
+        List<Price> prices = new ArrayList<>();
+        IntStream.range(0, PriceRepository.PARALLEL_MERGE_THRESHOLD).forEach(number -> prices.add(Price.builder()
+            .id(instrumentId)
+            .asOf(now.minusSeconds(number))
+            .payload(PricePayload.of("payload " + number))
+            .build()));
+
+        //act
+        repository.addPrices(prices);
+
+        //assert
+        assertEquals(2, getRepoPricesMap(repository).get(instrumentId).size());
+        assertEquals(List.of(prices.get(1), prices.get(0)), repository.getPrices(instrumentId, now.minusDays(1), now));
+    }
+
+    @Test
+    void addPrices_withChunks_shouldMergeEveryChunkAndPublishLastPricesOnce() {
+        //arrange
+        InstrumentId instrumentId = InstrumentId.of(UUID.randomUUID().toString());
+        LocalDateTime now = LocalDateTime.now();
+        List<List<Price>> chunks = new ArrayList<>();
+        //more than one merge group, the latest price is in the middle of the run
+        int chunksNumber = PriceRepository.MERGE_GROUP_SIZE / 1000 * 2 + 1;
+        IntStream.range(0, chunksNumber).forEach(chunk -> chunks.add(IntStream.range(0, 1000)
+            .mapToObj(number -> Price.builder()
+                .id(instrumentId)
+                .asOf(now.minusSeconds(Math.abs(chunk - chunksNumber / 2) * 1000L + number))
+                .payload(PricePayload.of("payload " + chunk + " " + number))
+                .build())
+            .collect(Collectors.toList())));
+        ArgumentCaptor<LatestPrices> argumentCaptor = ArgumentCaptor.forClass(LatestPrices.class);
+
+        //act
+        int merged = repository.addPrices(chunks.iterator());
+
+        //assert
+        assertEquals(chunksNumber * 1000, merged);
+        verify(lastPriceRepository).addPrices(argumentCaptor.capture());
+        assertEquals(PricePayload.of("payload " + chunksNumber / 2 + " 0"), toMap(argumentCaptor.getValue()).get(instrumentId).getPayload());
+        assertEquals((chunksNumber / 2 + 1) * 1000, getRepoPricesMap(repository).get(instrumentId).size());
+    }
+
+    @Test
+    void addPrices_withCountRetention_shouldKeepLastPricesPerInstrument() {
+        //arrange
+        repository = new PriceRepository(lastPriceRepository, new InstrumentIdRegistry(), HistoryRetention.keepLast(2), PriceRepository.HistoryStore.SKIP_LIST);
+        InstrumentId instrumentId = InstrumentId.of(UUID.randomUUID().toString());
+        LocalDateTime now = LocalDateTime.now();
+        List<Price> prices = new ArrayList<>();
+        IntStream.range(0, 5).forEach(number -> prices.add(Price.builder()
+            .id(instrumentId)
+            .asOf(now.minusHours(number))
+            .payload(PricePayload.of("payload " + number))
+            .build()));
+
+        //act
+        repository.addPrices(prices);
+
+        //assert
+        assertEquals(2, getRepoPricesMap(repository).get(instrumentId).size());
+    }
+
+    @Test
+    void addPrices_withWindowRetention_shouldEvictPricesOutsideOfWindow() {
+        //arrange
+        repository = new PriceRepository(lastPriceRepository, new InstrumentIdRegistry(), HistoryRetention.keepWithin(Duration.ofHours(2)), PriceRepository.HistoryStore.SKIP_LIST);
+        InstrumentId instrumentId = InstrumentId.of(UUID.randomUUID().toString());
+        Price dayAgoPrice = Price.builder()
+            .id(instrumentId)
+            .asOf(LocalDateTime.now().minusDays(1))
+            .payload(PricePayload.of("Day ago price"))
+            .build();
+        Price nowPrice = Price.builder()
+            .id(instrumentId)
+            .asOf(LocalDateTime.now())
+            .payload(PricePayload.of("Now price"))
+            .build();
+
+        //act
+        repository.addPrices(List.of(dayAgoPrice, nowPrice));
+
+        //assert
+        assertEquals(1, getRepoPricesMap(repository).get(instrumentId).size());
+    }
+
+    @Test
+    void evictExpiredPrices_withWindowRetention_shouldEvictPricesOfNotPublishedInstruments() {
+        //arrange
+        repository = new PriceRepository(lastPriceRepository, new InstrumentIdRegistry(), HistoryRetention.keepWithin(Duration.ofHours(2)), PriceRepository.HistoryStore.SKIP_LIST);
+        InstrumentId instrumentId = InstrumentId.of(UUID.randomUUID().toString());
+        Price hourAgoPrice = Price.builder()
+            .id(instrumentId)
+            .asOf(LocalDateTime.now().minusMinutes(90))
+            .payload(PricePayload.of("Hour ago price"))
+            .build();
+        repository.addPrices(List.of(hourAgoPrice));
+
+        //act
+        ReflectionTestUtils.setField(repository, "retention", HistoryRetention.keepWithin(Duration.ofHours(1)));
+        repository.evictExpiredPrices();
+
+        //assert
+        assertEquals(0, getRepoPricesMap(repository).get(instrumentId).size());
+    }
+
+    @Test
+    void addPrices_withNoneRetention_shouldKeepOnlyLastPrice() {
+        //arrange
+        repository = new PriceRepository(lastPriceRepository, new InstrumentIdRegistry(), HistoryRetention.keepNone(), PriceRepository.HistoryStore.SKIP_LIST);
+        Price price = Price.builder()
+            .id(InstrumentId.of(UUID.randomUUID().toString()))
+            .asOf(LocalDateTime.now())
+            .payload(PricePayload.of("Now price"))
+            .build();
+        ArgumentCaptor<LatestPrices> argumentCaptor = ArgumentCaptor.forClass(LatestPrices.class);
+
+        //act
+        repository.addPrices(List.of(price));
+
+        //assert
+        assertTrue(getRepoPricesMap(repository).isEmpty());
+        verify(lastPriceRepository).addPrices(argumentCaptor.capture());
+        assertEquals(price, toMap(argumentCaptor.getValue()).get(price.getId()));
     }
 
     @Test
@@ -124,8 +313,141 @@ class PriceRepositoryTest {
         verify(lastPriceRepository).getPriceById(instrumentId);
     }
 
+    @Test
+    void getPriceAsOf_shouldReturnPriceValidAtThatTime() {
+        //arrange
+        InstrumentId instrumentId = InstrumentId.of(UUID.randomUUID().toString());
+        LocalDateTime now = LocalDateTime.now();
+        Price yesterdayPrice = Price.builder()
+            .id(instrumentId)
+            .asOf(now.minusDays(1))
+            .payload(PricePayload.of("Yesterday price"))
+            .build();
+        Price nowPrice = Price.builder()
+            .id(instrumentId)
+            .asOf(now)
+            .payload(PricePayload.of("Now price"))
+            .build();
+        repository.addPrices(List.of(yesterdayPrice, nowPrice));
+
+        //act && assert
+        assertEquals(yesterdayPrice.getPayload(), repository.getPriceAsOf(instrumentId, now.minusHours(1)).get());
+        assertEquals(nowPrice.getPayload(), repository.getPriceAsOf(instrumentId, now).get());
+        assertTrue(repository.getPriceAsOf(instrumentId, now.minusDays(2)).isEmpty());
+        assertTrue(repository.getPriceAsOf(InstrumentId.of(UUID.randomUUID().toString()), now).isEmpty());
+        assertTrue(repository.getPriceAsOf(null, now).isEmpty());
+    }
+
+    @Test
+    void getPriceAsOf_withColumnarStore_shouldReturnPriceValidAtThatTime() {
+        //arrange
+        repository = new PriceRepository(lastPriceRepository, new InstrumentIdRegistry(), HistoryRetention.keepAll(), PriceRepository.HistoryStore.COLUMNAR);
+        InstrumentId instrumentId = InstrumentId.of(UUID.randomUUID().toString());
+        LocalDateTime now = LocalDateTime.now();
+        Price yesterdayPrice = Price.builder()
+            .id(instrumentId)
+            .asOf(now.minusDays(1))
+            .payload(PricePayload.of("Yesterday price"))
+            .build();
+        Price nowPrice = Price.builder()
+            .id(instrumentId)
+            .asOf(now)
+            .payload(PricePayload.of("Now price"))
+            .build();
+        repository.addPrices(List.of(nowPrice, yesterdayPrice));
+
+        //act && assert
+        assertEquals(yesterdayPrice.getPayload(), repository.getPriceAsOf(instrumentId, now.minusHours(1)).get());
+        assertEquals(List.of(yesterdayPrice, nowPrice), repository.getPrices(instrumentId, now.minusDays(2), now));
+    }
+
+    @Test
+    void compressColdHistories_withColumnarStore_shouldSaveMostOfPayloadBytes() {
+        //arrange
+        repository = new PriceRepository(lastPriceRepository, new InstrumentIdRegistry(), HistoryRetention.keepAll(),
+            PriceRepository.HistoryStore.COLUMNAR, true);
+        LocalDateTime now = LocalDateTime.now();
+        List<InstrumentId> instrumentIds = IntStream.range(0, 100)
+            .mapToObj(number -> InstrumentId.of("instrument" + number))
+            .collect(Collectors.toList());
+        long payloadBytes = 0;
+        for (int run = 0; run < 200; run++) {
+            List<Price> prices = new ArrayList<>();
+            for (InstrumentId instrumentId : instrumentIds) {
+                String payload = "{\"instrument\":\"" + instrumentId.getInstrumentId() + "\",\"bid\":" + (100 + run % 10)
+                    + ",\"ask\":" + (101 + run % 10) + ",\"currency\":\"EUR\",\"venue\":\"XETR\"}";
+                payloadBytes += payload.length();
+                prices.add(Price.builder().id(instrumentId).asOf(now.plusSeconds(run)).payload(PricePayload.of(payload)).build());
+            }
+            repository.addPrices(prices);
+        }
+
+        //act
+        repository.compressColdHistories();
+        repository.compressColdHistories();
+
+        //assert
+        log.info("{} of {} payload bytes saved", repository.compressionSavedBytes(), payloadBytes);
+        assertTrue(repository.compressionSavedBytes() > payloadBytes / 2);
+        assertEquals(Optional.of(PricePayload.of("{\"instrument\":\"instrument7\",\"bid\":105,\"ask\":106,"
+            + "\"currency\":\"EUR\",\"venue\":\"XETR\"}")), repository.getPriceAsOf(instrumentIds.get(7), now.plusSeconds(5)));
+    }
+
+    @Test
+    void getPrices_shouldReturnPricesWithinRange() {
+        //arrange
+        InstrumentId instrumentId = InstrumentId.of(UUID.randomUUID().toString());
+        LocalDateTime now = LocalDateTime.now();
+        Price yesterdayPrice = Price.builder()
+            .id(instrumentId)
+            .asOf(now.minusDays(1))
+            .payload(PricePayload.of("Yesterday price"))
+            .build();
+        Price hourAgoPrice = Price.builder()
+            .id(instrumentId)
+            .asOf(now.minusHours(1))
+            .payload(PricePayload.of("Hour ago price"))
+            .build();
+        Price nowPrice = Price.builder()
+            .id(instrumentId)
+            .asOf(now)
+            .payload(PricePayload.of("Now price"))
+            .build();
+        repository.addPrices(List.of(yesterdayPrice, nowPrice, hourAgoPrice));
+
+        //act && assert
+        assertEquals(List.of(hourAgoPrice, nowPrice), repository.getPrices(instrumentId, now.minusHours(2), now));
+        assertTrue(repository.getPrices(InstrumentId.of(UUID.randomUUID().toString()), now.minusHours(2), now).isEmpty());
+    }
+
+    @Test
+    void forEachLastPrice_shouldVisitPricesFromLastPriceRepo() {
+        //arrange
+        List<InstrumentId> instrumentIds = List.of(InstrumentId.of(UUID.randomUUID().toString()));
+        BiConsumer<InstrumentId, PricePayload> visitor = (instrumentId, payload) -> { };
+
+        //act
+        repository.forEachLastPrice(instrumentIds, visitor);
+
+        //assert
+        verify(lastPriceRepository).forEachPrice(instrumentIds, visitor);
+    }
+
     //yes, I know it is hacky, but I believe it is better than return values only for tests
-    private Map<InstrumentId, SortedSet<Price>> getRepoPricesMap(PriceRepository repository) {
-        return (Map<InstrumentId, SortedSet<Price>>) ReflectionTestUtils.getField(repository, "prices");
+    private Map<InstrumentId, PriceHistory> getRepoPricesMap(PriceRepository repository) {
+        InstrumentIdRegistry registry = (InstrumentIdRegistry) ReflectionTestUtils.getField(repository, "instrumentIdRegistry");
+        ConcurrentPagedArray<PriceHistory> prices = (ConcurrentPagedArray<PriceHistory>) ReflectionTestUtils.getField(repository, "prices");
+        Map<InstrumentId, PriceHistory> pricesMap = new HashMap<>();
+        IntStream.range(0, registry.size())
+            .filter(index -> prices.get(index) != null)
+            .forEach(index -> pricesMap.put(registry.instrumentAt(index), prices.get(index)));
+        return pricesMap;
+    }
+
+    private static Map<InstrumentId, Price> toMap(LatestPrices latestPrices) {
+        Map<InstrumentId, Price> pricesMap = new HashMap<>();
+        IntStream.range(0, latestPrices.size())
+            .forEach(position -> pricesMap.put(latestPrices.priceAt(position).getId(), latestPrices.priceAt(position)));
+        return pricesMap;
     }
 }
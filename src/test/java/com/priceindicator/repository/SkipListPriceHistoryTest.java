@@ -0,0 +1,98 @@
+package com.priceindicator.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PricePayload;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SkipListPriceHistoryTest {
+
+    private static final InstrumentId INSTRUMENT_ID = InstrumentId.of("instrumentId");
+
+    private SkipListPriceHistory history;
+    private final int coresNumber = Runtime.getRuntime().availableProcessors();
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @BeforeEach
+    void setUp() {
+        history = new SkipListPriceHistory();
+    }
+
+    @Test
+    void add_withSameAsOf_shouldKeepOnePrice() {
+        //act
+        history.add(createPrice(now));
+        history.add(createPrice(now));
+
+        //assert
+        assertEquals(1, history.size());
+    }
+
+    @Test
+    void retainLast_shouldNotEvictMoreThanNeededWhenCalledConcurrently() throws InterruptedException {
+        //arrange
+        IntStream.range(0, 1000).forEach(number -> history.add(createPrice(now.minusSeconds(number))));
+        ExecutorService executorService = Executors.newFixedThreadPool(coresNumber);
+
+        //act
+        for (int j = 0; j < 20; j++) {
+            executorService.execute(() -> history.retainLast(10));
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(2, TimeUnit.SECONDS);
+
+        //assert
+        assertEquals(10, history.size());
+    }
+
+    @Test
+    void retainFrom_shouldEvictOnlyOlderPrices() {
+        //arrange
+        IntStream.range(0, 10).forEach(number -> history.add(createPrice(now.minusHours(number))));
+
+        //act
+        history.retainFrom(now.minusHours(3));
+
+        //assert
+        assertEquals(4, history.size());
+    }
+
+    @Test
+    void floor_shouldReturnLatestPriceNotAfterAsOf() {
+        //arrange
+        IntStream.range(0, 10).forEach(number -> history.add(createPrice(now.minusHours(number))));
+
+        //act && assert
+        assertEquals(now.minusHours(3), history.floor(now.minusHours(2).minusMinutes(30)).get().getAsOf());
+        assertEquals(now.minusHours(3), history.floor(now.minusHours(3)).get().getAsOf());
+        assertTrue(history.floor(now.minusHours(10)).isEmpty());
+    }
+
+    @Test
+    void range_shouldReturnPricesWithinInclusiveRangeInTimeOrder() {
+        //arrange
+        IntStream.range(0, 10).forEach(number -> history.add(createPrice(now.minusHours(number))));
+
+        //act
+        List<Price> prices = history.range(now.minusHours(5), now.minusHours(3));
+
+        //assert
+        assertEquals(List.of(now.minusHours(5), now.minusHours(4), now.minusHours(3)),
+            prices.stream().map(Price::getAsOf).collect(Collectors.toList()));
+    }
+
+    private Price createPrice(LocalDateTime asOf) {
+        return Price.builder().id(INSTRUMENT_ID).asOf(asOf).payload(PricePayload.of("payload")).build();
+    }
+}
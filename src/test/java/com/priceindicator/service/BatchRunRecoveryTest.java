@@ -0,0 +1,78 @@
+package com.priceindicator.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.priceindicator.domain.BatchRunId;
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PriceBatch;
+import com.priceindicator.domain.PricePayload;
+import com.priceindicator.repository.BatchRepository;
+import com.priceindicator.repository.LastPriceRepository;
+import com.priceindicator.repository.PriceRepository;
+import com.priceindicator.wal.WriteAheadLog;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchRunRecoveryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recover_shouldRebuildOpenRunsAndFinishedPrices() throws InterruptedException {
+        //arrange
+        Price finishedPrice = createPrice("finished payload");
+        Price openPrice = createPrice("open payload");
+        Price canceledPrice = createPrice("canceled payload");
+        BatchRunId finishedRunId = BatchRunId.of(UUID.randomUUID());
+        BatchRunId openRunId = BatchRunId.of(UUID.randomUUID());
+        BatchRunId canceledRunId = BatchRunId.of(UUID.randomUUID());
+
+        WriteAheadLog writeAheadLog = createLog();
+        BatchRepository batchRepository = new BatchRepository(BatchRepository.StagingMode.FULL, BatchRepository.DEFAULT_TTL, writeAheadLog);
+        new BatchRunRecovery(writeAheadLog, batchRepository, new PriceRepository(new LastPriceRepository())).recover();
+        publish(batchRepository, finishedRunId, finishedPrice);
+        batchRepository.releaseBatchRun(finishedRunId);
+        publish(batchRepository, openRunId, openPrice);
+        publish(batchRepository, canceledRunId, canceledPrice);
+        batchRepository.removeBatchRun(canceledRunId);
+        writeAheadLog.close();
+
+        WriteAheadLog recoveredLog = createLog();
+        BatchRepository recoveredBatchRepository = new BatchRepository(BatchRepository.StagingMode.FULL, BatchRepository.DEFAULT_TTL, recoveredLog);
+        PriceRepository recoveredPriceRepository = new PriceRepository(new LastPriceRepository());
+
+        //act
+        new BatchRunRecovery(recoveredLog, recoveredBatchRepository, recoveredPriceRepository).recover();
+
+        //assert
+        assertEquals(finishedPrice.getPayload(), recoveredPriceRepository.getLastPriceById(finishedPrice.getId()).get());
+        assertTrue(recoveredPriceRepository.getLastPriceById(canceledPrice.getId()).isEmpty());
+        assertEquals(List.of(openPrice), recoveredBatchRepository.releaseBatchRun(openRunId));
+        recoveredLog.close();
+    }
+
+    private WriteAheadLog createLog() {
+        return new WriteAheadLog(true, directory, WriteAheadLog.DEFAULT_SEGMENT_SIZE, false, Duration.ZERO);
+    }
+
+    private static void publish(BatchRepository batchRepository, BatchRunId batchRunId, Price price) {
+        batchRepository.announceBatchRun(batchRunId);
+        batchRepository.addPrices(PriceBatch.builder().batchRunId(batchRunId).prices(List.of(price)).build());
+    }
+
+    private static Price createPrice(String payload) {
+        return Price.builder()
+            .id(InstrumentId.of(UUID.randomUUID().toString()))
+            .asOf(LocalDateTime.now())
+            .payload(PricePayload.of(payload))
+            .build();
+    }
+}
@@ -0,0 +1,41 @@
+package com.priceindicator.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class FrequencySketchTest {
+
+    @Test
+    void increment_shouldSaturateAtFifteen() {
+        //arrange
+        FrequencySketch sketch = new FrequencySketch(1024);
+
+        //act
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(42);
+        }
+
+        //assert
+        assertEquals(15, sketch.frequency(42));
+        assertTrue(sketch.frequency(43) < 15);
+    }
+
+    @Test
+    void increment_shouldHalveCountersAfterSample() {
+        //arrange
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 8; i++) {
+            sketch.increment(42);
+        }
+
+        //act
+        for (int key = 1000; key < 1000 + 10 * 16; key++) {
+            sketch.increment(key);
+        }
+
+        //assert
+        assertTrue(sketch.frequency(42) <= 4);
+    }
+}
@@ -0,0 +1,130 @@
+package com.priceindicator.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.priceindicator.domain.BatchRunId;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class IngestionPipelineTest {
+
+    private final BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+    private IngestionPipeline pipeline;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        pipeline.close();
+    }
+
+    @Test
+    void awaitDrained_shouldWaitForAllOfferedTasks() {
+        //arrange
+        pipeline = new IngestionPipeline(1024);
+        AtomicInteger counter = new AtomicInteger();
+
+        //act
+        for (int i = 0; i < 1000; i++) {
+            pipeline.offer(batchRunId, () -> {
+                counter.incrementAndGet();
+            });
+        }
+        pipeline.awaitDrained(batchRunId);
+
+        //assert
+        assertEquals(1000, counter.get());
+    }
+
+    @Test
+    void awaitDrained_shouldNotWaitForTasksOfOtherRuns() throws InterruptedException {
+        //arrange
+        pipeline = new IngestionPipeline(1024);
+        BatchRunId otherBatchRunId = BatchRunId.of(UUID.randomUUID());
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger counter = new AtomicInteger();
+        pipeline.offer(batchRunId, counter::incrementAndGet);
+        pipeline.offer(otherBatchRunId, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        //act
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> pipeline.awaitDrained(batchRunId));
+        release.countDown();
+
+        //assert
+        assertEquals(1, counter.get());
+    }
+
+    @Test
+    void awaitDrained_withStoppedWorker_shouldFailInsteadOfWaiting() {
+        //arrange
+        pipeline = new IngestionPipeline(1024);
+        pipeline.offer(batchRunId, () -> {
+            throw new AssertionError("worker stopped");
+        });
+        pipeline.offer(batchRunId, () -> { });
+
+        //act && assert
+        assertTimeoutPreemptively(Duration.ofSeconds(5),
+            () -> assertThrows(IllegalStateException.class, () -> pipeline.awaitDrained(batchRunId)));
+        assertFalse(pipeline.offer(batchRunId, () -> { }));
+    }
+
+    @Test
+    void forget_shouldDropProgressOfRun() {
+        //arrange
+        pipeline = new IngestionPipeline(1024);
+        pipeline.offer(batchRunId, () -> { });
+        pipeline.awaitDrained(batchRunId);
+
+        //act
+        pipeline.forget(batchRunId);
+
+        //assert
+        assertTrue(getPipelineRuns().isEmpty());
+    }
+
+    @Test
+    void offer_withFullBuffer_shouldReturnFalse() throws InterruptedException {
+        //arrange
+        pipeline = new IngestionPipeline(2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline.offer(batchRunId, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await();
+        pipeline.offer(batchRunId, () -> { });
+        pipeline.offer(batchRunId, () -> { });
+
+        //act
+        boolean accepted = pipeline.offer(batchRunId, () -> { });
+        release.countDown();
+
+        //assert
+        assertFalse(accepted);
+    }
+
+    //yes, I know it is hacky, but I believe it is better than return values only for tests
+    private Map<BatchRunId, ?> getPipelineRuns() {
+        return (Map<BatchRunId, ?>) ReflectionTestUtils.getField(pipeline, "runs");
+    }
+}
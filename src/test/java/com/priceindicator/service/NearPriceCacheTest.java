@@ -0,0 +1,88 @@
+package com.priceindicator.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.PricePayload;
+import com.priceindicator.repository.PriceRepository;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+class NearPriceCacheTest {
+
+    private final InstrumentId hot = InstrumentId.of("hot");
+    private final InstrumentId cold = InstrumentId.of("cold");
+
+    @Test
+    void getLastPriceById_shouldServeCachedPriceWhileVersionIsTheSame() {
+        //arrange
+        PriceRepository repository = mock(PriceRepository.class);
+        when(repository.getLastPriceById(hot)).thenReturn(Optional.of(PricePayload.of("payload")));
+        NearPriceCache cache = new NearPriceCache(repository, 16);
+
+        //act
+        cache.getLastPriceById(hot);
+        Optional<PricePayload> lastPrice = cache.getLastPriceById(hot);
+
+        //assert
+        assertEquals(Optional.of(PricePayload.of("payload")), lastPrice);
+        verify(repository, times(1)).getLastPriceById(hot);
+    }
+
+    @Test
+    void getLastPriceById_shouldReloadPriceWhenVersionChanged() {
+        //arrange
+        PriceRepository repository = mock(PriceRepository.class);
+        when(repository.getLastPriceById(hot))
+            .thenReturn(Optional.of(PricePayload.of("payload")), Optional.of(PricePayload.of("newPayload")));
+        NearPriceCache cache = new NearPriceCache(repository, 16);
+        cache.getLastPriceById(hot);
+
+        //act
+        when(repository.getLastPriceVersion()).thenReturn(1L);
+        Optional<PricePayload> lastPrice = cache.getLastPriceById(hot);
+
+        //assert
+        assertEquals(Optional.of(PricePayload.of("newPayload")), lastPrice);
+    }
+
+    @Test
+    void getLastPriceById_shouldNotEvictHotInstrumentForColdOne() {
+        //arrange
+        PriceRepository repository = mock(PriceRepository.class);
+        when(repository.getLastPriceById(hot)).thenReturn(Optional.of(PricePayload.of("hot")));
+        when(repository.getLastPriceById(cold)).thenReturn(Optional.of(PricePayload.of("cold")));
+        NearPriceCache cache = new NearPriceCache(repository, 1);
+        for (int i = 0; i < 5; i++) {
+            cache.getLastPriceById(hot);
+        }
+
+        //act
+        Optional<PricePayload> coldPrice = cache.getLastPriceById(cold);
+        Optional<PricePayload> hotPrice = cache.getLastPriceById(hot);
+
+        //assert
+        assertEquals(Optional.of(PricePayload.of("cold")), coldPrice);
+        assertEquals(Optional.of(PricePayload.of("hot")), hotPrice);
+        verify(repository, times(1)).getLastPriceById(hot);
+    }
+
+    @Test
+    void getLastPriceById_shouldAlwaysReadRepositoryWhenDisabled() {
+        //arrange
+        PriceRepository repository = mock(PriceRepository.class);
+        when(repository.getLastPriceById(hot)).thenReturn(Optional.of(PricePayload.of("payload")));
+        NearPriceCache cache = new NearPriceCache(repository, 0);
+
+        //act
+        cache.getLastPriceById(hot);
+        cache.getLastPriceById(hot);
+
+        //assert
+        verify(repository, times(2)).getLastPriceById(hot);
+    }
+}
@@ -1,14 +1,23 @@
 package com.priceindicator.service;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.priceindicator.domain.InstrumentId;
 import com.priceindicator.domain.PricePayload;
 import com.priceindicator.repository.PriceRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.BiConsumer;
 import org.junit.jupiter.api.Test;
 
 class PriceConsumeServiceTest {
@@ -17,7 +26,8 @@ class PriceConsumeServiceTest {
     void getLastPriceById_shouldGetItFromRepo() {
         //arrange
         PriceRepository repository = mock(PriceRepository.class);
-        PriceConsumeService service = new PriceConsumeService(repository);
+        PriceConsumeService service = new PriceConsumeService(repository, new PriceMetrics(),
+            mock(PriceSubscriptions.class), new NearPriceCache(repository));
         InstrumentId id = InstrumentId.of(UUID.randomUUID().toString());
         PricePayload payload = PricePayload.of("payload");
         when(repository.getLastPriceById(id)).thenReturn(Optional.of(payload));
@@ -28,4 +38,94 @@ class PriceConsumeServiceTest {
         //assert
         assertEquals(payload, lastPriceById.get());
     }
-}
\ No newline at end of file
+
+    @Test
+    void getLastPrices_shouldCollectVisitedPricesFromRepo() {
+        //arrange
+        PriceRepository repository = mock(PriceRepository.class);
+        PriceConsumeService service = new PriceConsumeService(repository, new PriceMetrics(),
+            mock(PriceSubscriptions.class), new NearPriceCache(repository));
+        InstrumentId id = InstrumentId.of(UUID.randomUUID().toString());
+        InstrumentId notExistingId = InstrumentId.of(UUID.randomUUID().toString());
+        PricePayload payload = PricePayload.of("payload");
+        List<InstrumentId> ids = List.of(id, notExistingId);
+        doAnswer(invocation -> {
+            BiConsumer<InstrumentId, PricePayload> visitor = invocation.getArgument(1);
+            visitor.accept(id, payload);
+            return 1;
+        }).when(repository).forEachLastPrice(eq(ids), any());
+
+        //act
+        Map<InstrumentId, PricePayload> lastPrices = service.getLastPrices(ids);
+
+        //assert
+        assertEquals(Map.of(id, payload), lastPrices);
+    }
+
+    @Test
+    void forEachLastPrice_shouldVisitPricesFromRepo() {
+        //arrange
+        PriceRepository repository = mock(PriceRepository.class);
+        PriceConsumeService service = new PriceConsumeService(repository, new PriceMetrics(),
+            mock(PriceSubscriptions.class), new NearPriceCache(repository));
+        List<InstrumentId> ids = List.of(InstrumentId.of(UUID.randomUUID().toString()));
+        BiConsumer<InstrumentId, PricePayload> visitor = (instrumentId, payload) -> { };
+
+        //act
+        service.forEachLastPrice(ids, visitor);
+
+        //assert
+        verify(repository).forEachLastPrice(ids, visitor);
+    }
+
+    @Test
+    void getLastPrices_shouldCountHitsAndMisses() {
+        //arrange
+        PriceRepository repository = mock(PriceRepository.class);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PriceConsumeService service = new PriceConsumeService(repository, new PriceMetrics(meterRegistry),
+            mock(PriceSubscriptions.class), new NearPriceCache(repository));
+        List<InstrumentId> ids = List.of(InstrumentId.of(UUID.randomUUID().toString()), InstrumentId.of(UUID.randomUUID().toString()));
+        when(repository.forEachLastPrice(eq(ids), any())).thenReturn(1);
+        when(repository.getLastPriceById(any())).thenReturn(Optional.empty());
+
+        //act
+        service.getLastPrices(ids);
+        service.getLastPriceById(ids.get(0));
+
+        //assert
+        assertEquals(1, meterRegistry.get("priceindicator.consume.last.price").tag("result", "hit").counter().count());
+        assertEquals(2, meterRegistry.get("priceindicator.consume.last.price").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void getPriceAsOf_shouldGetItFromRepo() {
+        //arrange
+        PriceRepository repository = mock(PriceRepository.class);
+        PriceConsumeService service = new PriceConsumeService(repository, new PriceMetrics(),
+            mock(PriceSubscriptions.class), new NearPriceCache(repository));
+        InstrumentId id = InstrumentId.of(UUID.randomUUID().toString());
+        LocalDateTime asOf = LocalDateTime.now();
+        PricePayload payload = PricePayload.of("payload");
+        when(repository.getPriceAsOf(id, asOf)).thenReturn(Optional.of(payload));
+
+        //act
+        Optional<PricePayload> priceAsOf = service.getPriceAsOf(id, asOf);
+
+        //assert
+        assertEquals(payload, priceAsOf.get());
+    }
+
+    @Test
+    void getPrices_withIncorrectRange_shouldThrowException() {
+        //arrange
+        PriceRepository repository = mock(PriceRepository.class);
+        PriceConsumeService service = new PriceConsumeService(repository, new PriceMetrics(),
+            mock(PriceSubscriptions.class), new NearPriceCache(repository));
+        InstrumentId id = InstrumentId.of(UUID.randomUUID().toString());
+        LocalDateTime now = LocalDateTime.now();
+
+        //act && assert
+        assertThrows(IllegalArgumentException.class, () -> service.getPrices(id, now, now.minusHours(1)));
+    }
+}
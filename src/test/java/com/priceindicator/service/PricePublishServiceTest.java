@@ -3,11 +3,15 @@ package com.priceindicator.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.priceindicator.codec.PriceBatchCodec;
 import com.priceindicator.domain.BatchRunId;
 import com.priceindicator.domain.BatchRunStatus;
 import com.priceindicator.domain.BatchRunStatus.Status;
@@ -16,29 +20,41 @@ import com.priceindicator.domain.PriceBatch;
 import com.priceindicator.domain.InstrumentId;
 import com.priceindicator.domain.PricePayload;
 import com.priceindicator.repository.BatchRepository;
+import com.priceindicator.repository.HistoryRetention;
+import com.priceindicator.repository.InstrumentIdRegistry;
+import com.priceindicator.repository.LastPriceRepository;
 import com.priceindicator.repository.PriceRepository;
+import com.priceindicator.repository.exception.BatchClosedException;
+import com.priceindicator.repository.exception.BatchExpiredException;
 import com.priceindicator.repository.exception.BatchNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.IntStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
 
 class PricePublishServiceTest {
 
     private BatchRepository batchRepository;
     private PriceRepository priceRepository;
+    private IngestionPipeline ingestionPipeline;
     private PricePublishService service;
 
     @BeforeEach
     public void setUp() {
         batchRepository = mock(BatchRepository.class);
         priceRepository = mock(PriceRepository.class);
-        service = new PricePublishService(batchRepository, priceRepository);
+        ingestionPipeline = mock(IngestionPipeline.class);
+        service = new PricePublishService(batchRepository, priceRepository, ingestionPipeline, new PriceMetrics());
     }
 
     @Test
@@ -73,6 +89,25 @@ class PricePublishServiceTest {
         assertEquals(Status.IN_PROGRESS, batchStatus.getStatus());
     }
 
+    @Test
+    void publishBatch_withEncodedBatch_shouldAddDecodedPricesToRepo() {
+        //arrange
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        Price price = Price.builder()
+            .id(InstrumentId.of(UUID.randomUUID().toString()))
+            .asOf(LocalDateTime.now())
+            .payload(PricePayload.of("payload"))
+            .build();
+        PriceBatch priceBatch = PriceBatch.builder().batchRunId(batchRunId).prices(List.of(price)).build();
+
+        //act
+        BatchRunStatus batchStatus = service.publishBatch(PriceBatchCodec.encode(priceBatch));
+
+        //assert
+        verify(batchRepository).addPrices(priceBatch);
+        assertEquals(Status.IN_PROGRESS, batchStatus.getStatus());
+    }
+
     @Test
     void publishBatch_withTooBigNumber_shouldThrowException() {
         //arrange
@@ -120,22 +155,234 @@ class PricePublishServiceTest {
         assertEquals(Status.ERROR, batchRunStatus.getStatus());
     }
 
+    @Test
+    void publishBatch_withExpiredBatchRunId_shouldReturnExpiredStatus() {
+        //arrange
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        Price price = Price.builder()
+            .id(InstrumentId.of(UUID.randomUUID().toString())).asOf(LocalDateTime.now())
+            .payload(PricePayload.of("payload"))
+            .build();
+        PriceBatch priceBatch = PriceBatch.builder().batchRunId(batchRunId).prices(Collections.singletonList(price)).build();
+        doThrow(new BatchExpiredException()).when(batchRepository).addPrices(priceBatch);
+
+        //act
+        BatchRunStatus batchRunStatus = service.publishBatch(priceBatch);
+
+        //assert
+        assertEquals(Status.EXPIRED, batchRunStatus.getStatus());
+    }
+
+    @Test
+    void publishBatch_withSealingBatchRun_shouldReturnSealingStatus() {
+        //arrange
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        Price price = Price.builder()
+            .id(InstrumentId.of(UUID.randomUUID().toString())).asOf(LocalDateTime.now())
+            .payload(PricePayload.of("payload"))
+            .build();
+        PriceBatch priceBatch = PriceBatch.builder().batchRunId(batchRunId).prices(Collections.singletonList(price)).build();
+        doThrow(new BatchClosedException(Status.SEALING)).when(batchRepository).addPrices(priceBatch);
+
+        //act
+        BatchRunStatus batchRunStatus = service.publishBatch(priceBatch);
+
+        //assert
+        assertEquals(Status.SEALING, batchRunStatus.getStatus());
+    }
+
+    @Test
+    void publishBatchAsync_withAcceptedBatch_shouldCompleteWithStatusWhenProcessed() throws Exception {
+        //arrange
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        Price price = Price.builder()
+            .id(InstrumentId.of(UUID.randomUUID().toString())).asOf(LocalDateTime.now())
+            .payload(PricePayload.of("payload"))
+            .build();
+        PriceBatch priceBatch = PriceBatch.builder().batchRunId(batchRunId).prices(Collections.singletonList(price)).build();
+        when(batchRepository.isOpen(batchRunId)).thenReturn(true);
+        when(ingestionPipeline.offer(any(), any())).thenAnswer(invocation -> {
+            invocation.getArgument(1, Runnable.class).run();
+            return true;
+        });
+
+        //act
+        CompletableFuture<BatchRunStatus> batchRunStatus = service.publishBatchAsync(priceBatch);
+
+        //assert
+        verify(batchRepository).addPrices(priceBatch);
+        assertEquals(Status.IN_PROGRESS, batchRunStatus.get().getStatus());
+    }
+
+    @Test
+    void publishBatchAsync_withFullPipeline_shouldReturnRejectedStatus() throws Exception {
+        //arrange
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        Price price = Price.builder()
+            .id(InstrumentId.of(UUID.randomUUID().toString())).asOf(LocalDateTime.now())
+            .payload(PricePayload.of("payload"))
+            .build();
+        PriceBatch priceBatch = PriceBatch.builder().batchRunId(batchRunId).prices(Collections.singletonList(price)).build();
+        when(batchRepository.isOpen(batchRunId)).thenReturn(true);
+        when(ingestionPipeline.offer(any(), any())).thenReturn(false);
+
+        //act
+        CompletableFuture<BatchRunStatus> batchRunStatus = service.publishBatchAsync(priceBatch);
+
+        //assert
+        verify(batchRepository, never()).addPrices(priceBatch);
+        assertEquals(Status.REJECTED, batchRunStatus.get().getStatus());
+    }
+
+    @Test
+    void publishBatchAsync_withClosedRun_shouldReturnClosedStatusWithoutQueueing() throws Exception {
+        //arrange
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        Price price = Price.builder()
+            .id(InstrumentId.of(UUID.randomUUID().toString())).asOf(LocalDateTime.now())
+            .payload(PricePayload.of("payload"))
+            .build();
+        PriceBatch priceBatch = PriceBatch.builder().batchRunId(batchRunId).prices(Collections.singletonList(price)).build();
+        doThrow(new BatchClosedException(Status.CANCELED)).when(batchRepository).addPrices(priceBatch);
+
+        //act
+        CompletableFuture<BatchRunStatus> batchRunStatus = service.publishBatchAsync(priceBatch);
+
+        //assert
+        verify(ingestionPipeline, never()).offer(any(), any());
+        assertEquals(Status.CANCELED, batchRunStatus.get().getStatus());
+    }
+
+    @Test
+    void publishBatchAsync_withCanceledRun_shouldNotLeaveRunInPipeline() throws Exception {
+        //arrange
+        IngestionPipeline pipeline = new IngestionPipeline(1024);
+        service = new PricePublishService(new BatchRepository(), priceRepository, pipeline, new PriceMetrics());
+        BatchRunId batchRunId = service.announceBatchRun().getBatchRunId();
+        Price price = Price.builder()
+            .id(InstrumentId.of(UUID.randomUUID().toString())).asOf(LocalDateTime.now())
+            .payload(PricePayload.of("payload"))
+            .build();
+        PriceBatch priceBatch = PriceBatch.builder().batchRunId(batchRunId).prices(Collections.singletonList(price)).build();
+        service.publishBatchAsync(priceBatch).get();
+
+        //act
+        service.cancelBatchRun(batchRunId);
+        BatchRunStatus lateStatus = service.publishBatchAsync(priceBatch).get();
+        pipeline.close();
+
+        //assert
+        assertEquals(Status.CANCELED, lateStatus.getStatus());
+        assertTrue(getPipelineRuns(pipeline).isEmpty());
+    }
+
     @Test
     void finishBatch_shouldReleaseBatchAndAddPrices() {
         //arrange
         BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
-        List<Price> prices = Collections.emptyList();
-        when(batchRepository.releaseBatchRun(batchRunId)).thenReturn(prices);
+        Iterator<List<Price>> chunks = Collections.emptyIterator();
+        when(batchRepository.finishBatchRun(batchRunId)).thenReturn(chunks);
 
         //act
         BatchRunStatus batchStatus = service.finishBatchRun(batchRunId);
 
         //assert
-        verify(priceRepository).addPrices(prices);
+        verify(ingestionPipeline).awaitDrained(batchRunId);
+        verify(priceRepository).addPrices(chunks);
+        verify(batchRepository).batchRunPublished(batchRunId, chunks);
         assertEquals(Status.FINISHED, batchStatus.getStatus());
         assertEquals(batchRunId, batchStatus.getBatchRunId());
     }
 
+    @Test
+    void finishBatch_withRunClosedBefore_shouldReturnStatusOfRun() {
+        //arrange
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        when(batchRepository.finishBatchRun(batchRunId)).thenThrow(new BatchExpiredException());
+
+        //act
+        BatchRunStatus batchStatus = service.finishBatchRun(batchRunId);
+
+        //assert
+        verify(priceRepository, never()).addPrices(any(Iterator.class));
+        assertEquals(Status.EXPIRED, batchStatus.getStatus());
+    }
+
+    @Test
+    void finishBatch_withNotExistingBatchRunId_shouldReturnErrorStatus() {
+        //arrange
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        when(batchRepository.finishBatchRun(batchRunId)).thenThrow(new BatchNotFoundException());
+
+        //act
+        BatchRunStatus batchStatus = service.finishBatchRun(batchRunId);
+
+        //assert
+        assertEquals(Status.ERROR, batchStatus.getStatus());
+    }
+
+    @Test
+    void finishBatch_withFailedMerge_shouldStillReleaseRunFromWriteAheadLog() {
+        //arrange
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        Iterator<List<Price>> chunks = Collections.emptyIterator();
+        when(batchRepository.finishBatchRun(batchRunId)).thenReturn(chunks);
+        when(priceRepository.addPrices(chunks)).thenThrow(new IllegalArgumentException("merge failed"));
+
+        //act
+        assertThrows(IllegalArgumentException.class, () -> service.finishBatchRun(batchRunId));
+
+        //assert
+        verify(batchRepository).batchRunPublished(batchRunId, chunks);
+    }
+
+    @Test
+    void finishBatch_shouldRecordFinishMetrics() {
+        //arrange
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        service = new PricePublishService(batchRepository, priceRepository, ingestionPipeline, new PriceMetrics(meterRegistry));
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        Price price = Price.builder()
+            .id(InstrumentId.of(UUID.randomUUID().toString()))
+            .asOf(LocalDateTime.now())
+            .payload(PricePayload.of("payload"))
+            .build();
+        Iterator<List<Price>> chunks = List.of(List.of(price, price)).iterator();
+        when(batchRepository.finishBatchRun(batchRunId)).thenReturn(chunks);
+        when(priceRepository.addPrices(chunks)).thenReturn(2);
+
+        //act
+        service.finishBatchRun(batchRunId);
+
+        //assert
+        assertEquals(1, meterRegistry.get("priceindicator.finish.release").timer().count());
+        assertEquals(1, meterRegistry.get("priceindicator.finish.merge").timer().count());
+        assertEquals(2, meterRegistry.get("priceindicator.finish.prices").summary().totalAmount());
+    }
+
+    @Test
+    void finishBatch_afterBatchWithAsOfOutOfColumnarRange_shouldPublishOnlyAcceptedBatches() {
+        //arrange
+        LastPriceRepository lastPriceRepository = new LastPriceRepository();
+        service = new PricePublishService(new BatchRepository(),
+            new PriceRepository(lastPriceRepository, new InstrumentIdRegistry(), HistoryRetention.keepAll(), PriceRepository.HistoryStore.COLUMNAR),
+            ingestionPipeline, new PriceMetrics());
+        BatchRunId batchRunId = service.announceBatchRun().getBatchRunId();
+        InstrumentId instrumentId = InstrumentId.of(UUID.randomUUID().toString());
+        Price accepted = Price.builder().id(instrumentId).asOf(LocalDateTime.now()).payload(PricePayload.of("accepted")).build();
+        Price outOfRange = Price.builder().id(instrumentId).asOf(LocalDateTime.of(3000, 1, 1, 0, 0)).payload(PricePayload.of("out of range")).build();
+        service.publishBatch(PriceBatch.builder().batchRunId(batchRunId).prices(List.of(accepted)).build());
+
+        //act
+        assertThrows(IllegalArgumentException.class,
+            () -> service.publishBatch(PriceBatch.builder().batchRunId(batchRunId).prices(List.of(outOfRange)).build()));
+        BatchRunStatus batchStatus = service.finishBatchRun(batchRunId);
+
+        //assert
+        assertEquals(Status.FINISHED, batchStatus.getStatus());
+        assertEquals(accepted.getPayload(), lastPriceRepository.getPriceById(instrumentId).get());
+    }
+
     @Test
     void cancelBatch_shouldRemoveBatch() {
         //arrange
@@ -149,4 +396,9 @@ class PricePublishServiceTest {
         assertEquals(Status.CANCELED, batchStatus.getStatus());
         assertEquals(batchRunId, batchStatus.getBatchRunId());
     }
-}
\ No newline at end of file
+
+    //yes, I know it is hacky, but I believe it is better than return values only for tests
+    private static Map<BatchRunId, ?> getPipelineRuns(IngestionPipeline pipeline) {
+        return (Map<BatchRunId, ?>) ReflectionTestUtils.getField(pipeline, "runs");
+    }
+}
@@ -0,0 +1,176 @@
+package com.priceindicator.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PricePayload;
+import com.priceindicator.repository.LastPriceRepository;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PriceSubscriptionsTest {
+
+    private final LocalDateTime now = LocalDateTime.now();
+    private LastPriceRepository lastPriceRepository;
+    private PriceSubscriptions subscriptions;
+
+    @BeforeEach
+    void setUp() {
+        lastPriceRepository = new LastPriceRepository();
+        subscriptions = new PriceSubscriptions(lastPriceRepository, 1, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        subscriptions.close();
+    }
+
+    @Test
+    void subscribe_shouldDeliverOnlySubscribedInstruments() throws InterruptedException {
+        //arrange
+        BlockingQueue<Price> delivered = new LinkedBlockingQueue<>();
+        subscriptions.subscribe(List.of(InstrumentId.of("instrumentId")), delivered::add);
+        Price subscribed = createPrice("instrumentId", now, "payload");
+        Price notSubscribed = createPrice("anotherInstrumentId", now, "payload");
+
+        //act
+        lastPriceRepository.addPrices(Map.of(subscribed.getId(), subscribed, notSubscribed.getId(), notSubscribed));
+
+        //assert
+        assertEquals(subscribed, delivered.poll(5, TimeUnit.SECONDS));
+        assertNull(delivered.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void subscribeAll_shouldDeliverLatestPriceOfSlowSubscriber() throws InterruptedException {
+        //arrange
+        CountDownLatch firstDelivered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<Price> delivered = new LinkedBlockingQueue<>();
+        PriceSubscription subscription = subscriptions.subscribeAll(price -> {
+            delivered.add(price);
+            firstDelivered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        addPrice(createPrice("first", now, "payload"));
+        assertTrue(firstDelivered.await(5, TimeUnit.SECONDS));
+
+        //act
+        addPrice(createPrice("instrumentId", now, "older"));
+        addPrice(createPrice("instrumentId", now.plusSeconds(1), "latest"));
+        release.countDown();
+
+        //assert
+        delivered.take();
+        assertEquals(PricePayload.of("latest"), delivered.poll(5, TimeUnit.SECONDS).getPayload());
+        assertNull(delivered.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, subscription.getDroppedPrices());
+    }
+
+    @Test
+    void subscribeAll_shouldDropEldestPricesWhenLimitIsReached() throws InterruptedException {
+        //arrange
+        CountDownLatch firstDelivered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<Price> delivered = new LinkedBlockingQueue<>();
+        PriceSubscription subscription = subscriptions.subscribeAll(price -> {
+            delivered.add(price);
+            firstDelivered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        addPrice(createPrice("first", now, "payload"));
+        assertTrue(firstDelivered.await(5, TimeUnit.SECONDS));
+
+        //act
+        addPrice(createPrice("instrumentId1", now, "payload"));
+        addPrice(createPrice("instrumentId2", now, "payload"));
+        addPrice(createPrice("instrumentId3", now, "payload"));
+        release.countDown();
+
+        //assert
+        delivered.take();
+        assertEquals(InstrumentId.of("instrumentId2"), delivered.poll(5, TimeUnit.SECONDS).getId());
+        assertEquals(InstrumentId.of("instrumentId3"), delivered.poll(5, TimeUnit.SECONDS).getId());
+        assertEquals(1, subscription.getDroppedPrices());
+        assertTrue(subscription.isLagging());
+        assertEquals(Set.of(InstrumentId.of("instrumentId1")), subscription.takeDroppedInstruments());
+        assertFalse(subscription.isLagging());
+    }
+
+    @Test
+    void subscribeAll_withDroppedInstrumentChangedAgain_shouldNotReportItAsDropped() throws InterruptedException {
+        //arrange
+        CountDownLatch firstDelivered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<Price> delivered = new LinkedBlockingQueue<>();
+        PriceSubscription subscription = subscriptions.subscribeAll(price -> {
+            delivered.add(price);
+            firstDelivered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        addPrice(createPrice("first", now, "payload"));
+        assertTrue(firstDelivered.await(5, TimeUnit.SECONDS));
+
+        //act
+        addPrice(createPrice("instrumentId1", now, "payload"));
+        addPrice(createPrice("instrumentId2", now, "payload"));
+        addPrice(createPrice("instrumentId3", now, "payload"));
+        addPrice(createPrice("instrumentId1", now.plusSeconds(1), "latest"));
+        release.countDown();
+
+        //assert
+        assertEquals(2, subscription.getDroppedPrices());
+        assertEquals(Set.of(InstrumentId.of("instrumentId2")), subscription.takeDroppedInstruments());
+    }
+
+    @Test
+    void cancel_shouldStopDelivery() throws InterruptedException {
+        //arrange
+        BlockingQueue<Price> delivered = new LinkedBlockingQueue<>();
+        PriceSubscription subscription = subscriptions.subscribe(List.of(InstrumentId.of("instrumentId")), delivered::add);
+
+        //act
+        subscription.cancel();
+        addPrice(createPrice("instrumentId", now, "payload"));
+
+        //assert
+        assertNull(delivered.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    private void addPrice(Price price) {
+        lastPriceRepository.addPrices(Map.of(price.getId(), price));
+    }
+
+    private static Price createPrice(String instrumentId, LocalDateTime asOf, String payload) {
+        return Price.builder()
+            .id(InstrumentId.of(instrumentId))
+            .asOf(asOf)
+            .payload(PricePayload.of(payload))
+            .build();
+    }
+}
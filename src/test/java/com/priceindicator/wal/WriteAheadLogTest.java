@@ -0,0 +1,196 @@
+package com.priceindicator.wal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.priceindicator.domain.BatchRunId;
+import com.priceindicator.domain.InstrumentId;
+import com.priceindicator.domain.Price;
+import com.priceindicator.domain.PricePayload;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recover_shouldReplayRecordsInAppendOrder() throws InterruptedException {
+        //arrange
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        List<WalRecord> records = List.of(
+            WalRecord.announce(batchRunId),
+            WalRecord.publish(batchRunId, List.of(createPrice("payload"), createPrice("другой payload"))),
+            WalRecord.finish(batchRunId),
+            WalRecord.cancel(batchRunId));
+        WriteAheadLog writeAheadLog = createLog(1024 * 1024);
+        writeAheadLog.recover(record -> { });
+        records.forEach(writeAheadLog::append);
+        writeAheadLog.sync();
+        writeAheadLog.close();
+
+        //act
+        List<WalRecord> recovered = recover(createLog(1024 * 1024));
+
+        //assert
+        assertEquals(records, recovered);
+    }
+
+    @Test
+    void append_withConcurrentWriters_shouldRollSegmentsAndKeepAllRecords() throws InterruptedException, IOException {
+        //arrange
+        WriteAheadLog writeAheadLog = createLog(4 * 1024);
+        writeAheadLog.recover(record -> { });
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+        //act
+        IntStream.range(0, 400).forEach(number -> executorService.execute(() -> {
+            writeAheadLog.append(WalRecord.publish(BatchRunId.of(UUID.randomUUID()), List.of(createPrice("payload " + number))));
+            writeAheadLog.sync();
+        }));
+        executorService.shutdown();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+        writeAheadLog.close();
+
+        //assert
+        assertTrue(listFiles().size() > 1);
+        List<WalRecord> recovered = recover(createLog(4 * 1024));
+        assertEquals(400, recovered.size());
+        assertEquals(IntStream.range(0, 400).mapToObj(number -> "payload " + number).collect(Collectors.toSet()),
+            recovered.stream().map(record -> record.getPrices().get(0).getPayload().getPayload()).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void recover_withTornRecord_shouldReplayRecordsBeforeIt() throws InterruptedException, IOException {
+        //arrange
+        BatchRunId batchRunId = BatchRunId.of(UUID.randomUUID());
+        WriteAheadLog writeAheadLog = createLog(1024 * 1024);
+        writeAheadLog.recover(record -> { });
+        writeAheadLog.append(WalRecord.announce(batchRunId));
+        writeAheadLog.append(WalRecord.publish(batchRunId, List.of(createPrice("payload"))));
+        writeAheadLog.sync();
+        writeAheadLog.close();
+        Path segment = listFiles().get(0);
+        long size = Files.size(segment);
+        try (var channel = Files.newByteChannel(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 1);
+        }
+
+        //act
+        List<WalRecord> recovered = recover(createLog(1024 * 1024));
+
+        //assert
+        assertEquals(List.of(WalRecord.announce(batchRunId)), recovered);
+    }
+
+    @Test
+    void truncate_shouldDeleteOnlySegmentsOfPublishedAndCanceledRuns() throws InterruptedException, IOException {
+        //arrange
+        BatchRunId publishedRunId = BatchRunId.of(UUID.randomUUID());
+        BatchRunId canceledRunId = BatchRunId.of(UUID.randomUUID());
+        BatchRunId openRunId = BatchRunId.of(UUID.randomUUID());
+        WriteAheadLog writeAheadLog = createLog(256);
+        writeAheadLog.recover(record -> { });
+        List.of(publishedRunId, canceledRunId).forEach(batchRunId -> {
+            writeAheadLog.append(WalRecord.announce(batchRunId));
+            IntStream.range(0, 5).forEach(number ->
+                writeAheadLog.append(WalRecord.publish(batchRunId, List.of(createPrice("payload " + number)))));
+            writeAheadLog.sync();
+        });
+        writeAheadLog.append(WalRecord.finish(publishedRunId));
+        writeAheadLog.append(WalRecord.cancel(canceledRunId));
+        writeAheadLog.sync();
+        writeAheadLog.published(publishedRunId);
+        writeAheadLog.append(WalRecord.announce(openRunId));
+        writeAheadLog.sync();
+        IntStream.range(0, 5).forEach(number -> {
+            writeAheadLog.append(WalRecord.publish(openRunId, List.of(createPrice("open payload " + number))));
+            writeAheadLog.sync();
+        });
+        int segments = listFiles().size();
+
+        //act
+        int deleted = writeAheadLog.truncate(writeAheadLog.checkpoint());
+        writeAheadLog.close();
+
+        //assert
+        assertTrue(deleted > 0);
+        assertEquals(segments - deleted, listFiles().size());
+        List<WalRecord> recovered = recover(createLog(256));
+        assertEquals(WalRecord.announce(openRunId), recovered.stream()
+            .filter(record -> record.getBatchRunId().equals(openRunId)).findFirst().get());
+        assertEquals(5, recovered.stream()
+            .filter(record -> record.getType() == WalRecord.Type.PUBLISH && record.getBatchRunId().equals(openRunId)).count());
+    }
+
+    @Test
+    void append_afterFailedCommit_shouldFailFast() throws InterruptedException {
+        //arrange
+        WriteAheadLog writeAheadLog = createLog(1024 * 1024);
+        writeAheadLog.recover(record -> { });
+        //yes, I know it is hacky, but failing a real disk write is not possible in a test
+        ReflectionTestUtils.setField(writeAheadLog, "failure", new IOException("disk failed"));
+
+        //act && assert
+        assertThrows(UncheckedIOException.class, () -> writeAheadLog.append(WalRecord.announce(BatchRunId.of(UUID.randomUUID()))));
+        writeAheadLog.close();
+    }
+
+    @Test
+    void append_withDisabledLog_shouldNotWriteAnything() throws IOException {
+        //arrange
+        WriteAheadLog writeAheadLog = new WriteAheadLog(false, directory, 1024, true, Duration.ZERO);
+        writeAheadLog.recover(record -> { });
+
+        //act
+        writeAheadLog.append(WalRecord.announce(BatchRunId.of(UUID.randomUUID())));
+        writeAheadLog.sync();
+
+        //assert
+        assertTrue(listFiles().isEmpty());
+    }
+
+    private WriteAheadLog createLog(long segmentSize) {
+        return new WriteAheadLog(true, directory, segmentSize, true, Duration.ofNanos(100_000));
+    }
+
+    private List<WalRecord> recover(WriteAheadLog writeAheadLog) throws InterruptedException {
+        List<WalRecord> recovered = new ArrayList<>();
+        writeAheadLog.recover(recovered::add);
+        writeAheadLog.close();
+        return recovered;
+    }
+
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static Price createPrice(String payload) {
+        return Price.builder()
+            .id(InstrumentId.of(UUID.randomUUID().toString()))
+            .asOf(LocalDateTime.now())
+            .payload(PricePayload.of(payload))
+            .build();
+    }
+}